@@ -103,9 +103,9 @@ public class MainActivity extends AppCompatActivity {
     }
     
     @Override
-    protected void onResume() {
-        super.onResume();
-        // Update activity reference in case it changed
-        StashPayCard.getInstance().setActivity(this);
+    protected void onDestroy() {
+        super.onDestroy();
+        // The listener refers to this activity; the SDK itself only holds the activity weakly
+        StashPayCard.getInstance().setListener(null);
     }
 }
@@ -4,9 +4,19 @@
 -keep class com.stash.popup.StashPayCard { *; }
 -keep class com.stash.popup.StashPayCard$* { *; }
 -keep interface com.stash.popup.StashPayCard$* { *; }
+-keep class com.stash.popup.CheckoutMetrics { *; }
+-keep enum com.stash.popup.CheckoutMetrics$* { *; }
+-keep class com.stash.popup.AnimationFrameStats { *; }
+-keep enum com.stash.popup.AnimationFrameStats$* { *; }
 
 # Keep internal classes that are accessed via reflection
 -keep class com.stash.popup.StashPayCardPlugin { *; }
 -keep class com.stash.popup.StashPayCardPortraitActivity { *; }
 -keep class com.stash.popup.StashWebViewUtils { *; }
 -keep class com.stash.popup.SpringInterpolator { *; }
+
+# Keep the JavaScript bridge methods called from the checkout page
+-keepattributes JavascriptInterface
+-keepclassmembers class com.stash.popup.StashJavaScriptBridge {
+    @android.webkit.JavascriptInterface <methods>;
+}
@@ -0,0 +1,141 @@
+package com.stash.popup;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.app.Instrumentation;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.webkit.WebViewFeature;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the JS-to-native round trip of the checkout bridge on a real WebView, for the
+ * {@code StashNative} message listener and for the legacy {@code StashAndroid} interface.
+ *
+ * Each round asks the page to post a message through one transport and times it until the
+ * bridge listener receives it on the main thread. Results are reported as instrumentation
+ * status ({@code <transport>_median_us}, {@code <transport>_p90_us}) and logged; there is no
+ * timing threshold, so the test only fails if messages are not delivered.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StashJavaScriptBridgeBenchmark {
+    private static final String TAG = "StashPayCard";
+    private static final String ORIGIN = "https://checkout.stashpay.test";
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 200;
+    private static final long TIMEOUT_S = 10;
+    private static final String PAGE = "<html><body><script>" +
+        "function ping(transport) {" +
+        "  var message = JSON.stringify({ type: 'ready', data: null, t: Date.now() });" +
+        "  if (transport === 'native') { StashNative.postMessage(message); }" +
+        "  else { StashAndroid.postMessage(message); }" +
+        "}" +
+        "</script></body></html>";
+
+    private Instrumentation instrumentation;
+    private StashWebView webView;
+    private volatile CountDownLatch delivered;
+    private volatile long sentAtNs;
+    private volatile long roundTripNs;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        final CountDownLatch loaded = new CountDownLatch(1);
+        instrumentation.runOnMainSync(() -> {
+            webView = new StashWebView(instrumentation.getTargetContext());
+            StashWebViewUtils.configureWebViewSettings(webView, false);
+            webView.addJavascriptInterface(webView.bridge, StashJavaScriptBridge.INTERFACE_NAME);
+            webView.installCheckoutBridge(ORIGIN + "/");
+            webView.bridge.setListener(new ReadyListener());
+            webView.setWebViewClient(new WebViewClient() {
+                @Override
+                public void onPageFinished(WebView view, String url) {
+                    loaded.countDown();
+                }
+            });
+            webView.loadDataWithBaseURL(ORIGIN + "/", PAGE, "text/html", "utf-8", null);
+        });
+        assertTrue("Benchmark page did not load", loaded.await(TIMEOUT_S, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        instrumentation.runOnMainSync(() -> {
+            if (webView != null) {
+                webView.bridge.setListener(null);
+                webView.destroy();
+            }
+        });
+    }
+
+    @Test
+    public void messageListenerRoundTrip() throws InterruptedException {
+        assumeTrue(WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_LISTENER));
+        measure("native", StashJavaScriptBridge.TRANSPORT_MESSAGE_LISTENER);
+    }
+
+    @Test
+    public void javascriptInterfaceRoundTrip() throws InterruptedException {
+        measure("legacy", StashJavaScriptBridge.TRANSPORT_JAVASCRIPT_INTERFACE);
+    }
+
+    private void measure(final String pageTransport, String name) throws InterruptedException {
+        final String script = "ping('" + pageTransport + "')";
+        long[] samples = new long[ROUNDS];
+        for (int i = 0; i < WARMUP_ROUNDS + ROUNDS; i++) {
+            delivered = new CountDownLatch(1);
+            instrumentation.runOnMainSync(() -> {
+                sentAtNs = SystemClock.elapsedRealtimeNanos();
+                webView.evaluateJavascript(script, null);
+            });
+            assertTrue(name + " message was not delivered", delivered.await(TIMEOUT_S, TimeUnit.SECONDS));
+            if (i >= WARMUP_ROUNDS) {
+                samples[i - WARMUP_ROUNDS] = roundTripNs;
+            }
+        }
+
+        Arrays.sort(samples);
+        long medianUs = samples[ROUNDS / 2] / 1000;
+        long p90Us = samples[ROUNDS * 9 / 10] / 1000;
+        Log.i(TAG, "Bridge round trip via " + name + ": median " + medianUs + "us, p90 " + p90Us + "us");
+        Bundle results = new Bundle();
+        results.putLong(name + "_median_us", medianUs);
+        results.putLong(name + "_p90_us", p90Us);
+        instrumentation.sendStatus(0, results);
+    }
+
+    private class ReadyListener implements StashJavaScriptBridge.Listener {
+        @Override
+        public void onPageReady() {
+            roundTripNs = SystemClock.elapsedRealtimeNanos() - sentAtNs;
+            CountDownLatch latch = delivered;
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+
+        @Override public void onPaymentSuccess(StashPayCard.PaymentEvent event) { }
+        @Override public void onPaymentFailure(StashPayCard.PaymentEvent event) { }
+        @Override public void onPurchaseProcessing(StashPayCard.PaymentEvent event) { }
+        @Override public void setPaymentChannel(String optinType) { }
+        @Override public void expand() { }
+        @Override public void collapse() { }
+        @Override public void onBridgeReady() { }
+    }
+}
@@ -0,0 +1,75 @@
+package com.stash.popup;
+
+/**
+ * Frame timing of one animation or gesture of the checkout card, delivered to
+ * {@link StashPayCard.AnimationFrameStatsListener} when it ends.
+ *
+ * A frame is janky when it took longer than one refresh interval of the display and frozen
+ * when it took longer than {@link #FROZEN_FRAME_MS}.
+ */
+public class AnimationFrameStats {
+    public static final long FROZEN_FRAME_MS = 700;
+
+    /**
+     * The animation or gesture that was measured.
+     */
+    public enum Phase {
+        /** The card sliding or fading in. */
+        OPEN,
+        /** The user dragging the card, until it settles. */
+        DRAG,
+        /** The card growing to its expanded size. */
+        EXPAND,
+        /** The card shrinking to its normal size. */
+        COLLAPSE,
+        /** The card leaving the screen. */
+        DISMISS
+    }
+
+    private final Phase phase;
+    private final int frameCount;
+    private final int jankyFrames;
+    private final int frozenFrames;
+    private final float p50FrameMs;
+    private final float p95FrameMs;
+    private final long durationMs;
+
+    AnimationFrameStats(Phase phase, int frameCount, int jankyFrames, int frozenFrames,
+                        float p50FrameMs, float p95FrameMs, long durationMs) {
+        this.phase = phase;
+        this.frameCount = frameCount;
+        this.jankyFrames = jankyFrames;
+        this.frozenFrames = frozenFrames;
+        this.p50FrameMs = p50FrameMs;
+        this.p95FrameMs = p95FrameMs;
+        this.durationMs = durationMs;
+    }
+
+    /** The animation or gesture that was measured. */
+    public Phase getPhase() { return phase; }
+    /** Number of frames drawn while it ran. */
+    public int getFrameCount() { return frameCount; }
+    /** Frames that took longer than one refresh interval. */
+    public int getJankyFrames() { return jankyFrames; }
+    /** Frames that took longer than {@link #FROZEN_FRAME_MS}. */
+    public int getFrozenFrames() { return frozenFrames; }
+    /** Median frame time in milliseconds. */
+    public float getP50FrameMs() { return p50FrameMs; }
+    /** 95th percentile frame time in milliseconds. */
+    public float getP95FrameMs() { return p95FrameMs; }
+    /** How long the phase lasted in milliseconds. */
+    public long getDurationMs() { return durationMs; }
+
+    @Override
+    public String toString() {
+        return "AnimationFrameStats{" +
+            "phase=" + phase +
+            ", frames=" + frameCount +
+            ", janky=" + jankyFrames +
+            ", frozen=" + frozenFrames +
+            ", p50=" + p50FrameMs + "ms" +
+            ", p95=" + p95FrameMs + "ms" +
+            ", duration=" + durationMs + "ms" +
+            '}';
+    }
+}
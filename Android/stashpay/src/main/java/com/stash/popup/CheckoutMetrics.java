@@ -0,0 +1,224 @@
+package com.stash.popup;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timing breakdown of a single checkout session, delivered to
+ * {@link StashPayCard.CheckoutMetricsListener} when the checkout is closed.
+ *
+ * Timestamps are taken from {@link SystemClock#uptimeMillis()}. Milestones that were not
+ * reached during the session are reported as {@link #NOT_REACHED}. Use
+ * {@link #sinceOpen(long)} to express a milestone relative to the openCheckout call.
+ */
+public class CheckoutMetrics {
+    public static final long NOT_REACHED = -1;
+
+    /**
+     * Where the WebView showing the checkout came from.
+     */
+    public enum WebViewSource {
+        /** Built when the checkout was opened. */
+        COLD,
+        /** Taken from the prewarmed pool. */
+        POOLED,
+        /**
+         * Adopted with the page already loading or loaded, either from
+         * {@link StashPayCard#preloadCheckout(String)} or from the load openCheckout starts
+         * while the card Activity launches.
+         */
+        PRELOADED
+    }
+
+    private final boolean popup;
+    private WebViewSource webViewSource = WebViewSource.COLD;
+
+    private long openCheckoutAt = NOT_REACHED;
+    private long containerCreatedAt = NOT_REACHED;
+    private long shellDrawnAt = NOT_REACHED;
+    private long skeletonShownAt = NOT_REACHED;
+    private long webViewReadyAt = NOT_REACHED;
+    private long navigationStartAt = NOT_REACHED;
+    private long commitVisibleAt = NOT_REACHED;
+    private long firstVisualFrameAt = NOT_REACHED;
+    private long pageFinishedAt = NOT_REACHED;
+    private long bridgeReadyAt = NOT_REACHED;
+    private long cardRevealedAt = NOT_REACHED;
+
+    private final AtomicInteger assetCacheHits = new AtomicInteger();
+    private final AtomicInteger assetCacheRevalidated = new AtomicInteger();
+    private final AtomicInteger assetCacheMisses = new AtomicInteger();
+    private final AtomicInteger assetCacheStale = new AtomicInteger();
+
+    private boolean entryAnimationFinished;
+    private boolean contentShown;
+    private boolean delivered;
+
+    CheckoutMetrics(boolean popup) {
+        this.popup = popup;
+    }
+
+    static long now() {
+        return SystemClock.uptimeMillis();
+    }
+
+    /** Whether the checkout was shown as a popup rather than a card. */
+    public boolean isPopup() { return popup; }
+    /** Where the WebView showing the checkout came from. */
+    public WebViewSource getWebViewSource() { return webViewSource; }
+    /** When openCheckout or openPopup was called. */
+    public long getOpenCheckoutTime() { return openCheckoutAt; }
+    /** When the card Activity or popup dialog was created. */
+    public long getContainerCreatedTime() { return containerCreatedAt; }
+    /** When the backdrop and card chrome were first drawn, before the WebView was added. */
+    public long getShellDrawnTime() { return shellDrawnAt; }
+    /** When the skeleton page bundled with the SDK was drawn, before the live checkout. */
+    public long getSkeletonShownTime() { return skeletonShownAt; }
+    /** When the WebView was configured and attached, before loading started. */
+    public long getWebViewReadyTime() { return webViewReadyAt; }
+    /** When the first navigation of the checkout page started. */
+    public long getNavigationStartTime() { return navigationStartAt; }
+    /** When the checkout page's content first became visible to the renderer. API 23+. */
+    public long getCommitVisibleTime() { return commitVisibleAt; }
+    /** When the first frame of the checkout page was ready to draw. API 23+. */
+    public long getFirstVisualFrameTime() { return firstVisualFrameAt; }
+    /** When the checkout page finished loading. */
+    public long getPageFinishedTime() { return pageFinishedAt; }
+    /** When {@code window.stash_sdk} was installed in the checkout page. */
+    public long getBridgeReadyTime() { return bridgeReadyAt; }
+    /** When the card finished its entry animation with the page content shown. */
+    public long getCardRevealedTime() { return cardRevealedAt; }
+    /** Versioned assets served from the SDK's asset cache without a network request. */
+    public int getAssetCacheHits() { return assetCacheHits.get(); }
+    /** Versioned assets served from the asset cache after the server confirmed them unchanged. */
+    public int getAssetCacheRevalidated() { return assetCacheRevalidated.get(); }
+    /** Versioned assets fetched from the network and added to the asset cache. */
+    public int getAssetCacheMisses() { return assetCacheMisses.get(); }
+    /** Versioned assets served from an outdated cache entry because the network failed. */
+    public int getAssetCacheStale() { return assetCacheStale.get(); }
+
+    /**
+     * Returns the share of versioned asset requests served without a network request,
+     * from 0 to 1, or {@link #NOT_REACHED} if the checkout requested none.
+     */
+    public float getAssetCacheHitRatio() {
+        int hits = assetCacheHits.get();
+        int total = hits + assetCacheRevalidated.get() + assetCacheMisses.get() + assetCacheStale.get();
+        return total == 0 ? NOT_REACHED : (float) hits / total;
+    }
+
+    /**
+     * Returns the time in milliseconds from the openCheckout call to {@code timestamp},
+     * or {@link #NOT_REACHED} if either was not reached.
+     */
+    public long sinceOpen(long timestamp) {
+        if (timestamp == NOT_REACHED || openCheckoutAt == NOT_REACHED) return NOT_REACHED;
+        return timestamp - openCheckoutAt;
+    }
+
+    void setWebViewSource(WebViewSource source) {
+        if (source != null) webViewSource = source;
+    }
+
+    void markOpenCheckout() {
+        if (openCheckoutAt == NOT_REACHED) openCheckoutAt = now();
+    }
+
+    void markContainerCreated() {
+        if (containerCreatedAt == NOT_REACHED) containerCreatedAt = now();
+    }
+
+    void markShellDrawn() {
+        if (shellDrawnAt == NOT_REACHED) shellDrawnAt = now();
+    }
+
+    void markSkeletonShown() {
+        if (skeletonShownAt == NOT_REACHED) skeletonShownAt = now();
+    }
+
+    void markWebViewReady() {
+        if (webViewReadyAt == NOT_REACHED) webViewReadyAt = now();
+    }
+
+    void markNavigationStart(long timestamp) {
+        if (navigationStartAt == NOT_REACHED) navigationStartAt = timestamp;
+    }
+
+    void markCommitVisible() {
+        if (commitVisibleAt == NOT_REACHED) commitVisibleAt = now();
+    }
+
+    void markFirstVisualFrame() {
+        if (firstVisualFrameAt == NOT_REACHED) firstVisualFrameAt = now();
+    }
+
+    void markPageFinished(long timestamp) {
+        if (pageFinishedAt == NOT_REACHED) pageFinishedAt = timestamp;
+    }
+
+    void markBridgeReady() {
+        if (bridgeReadyAt == NOT_REACHED) bridgeReadyAt = now();
+    }
+
+    void markEntryAnimationFinished() {
+        entryAnimationFinished = true;
+        markRevealedIfComplete();
+    }
+
+    void markContentShown() {
+        contentShown = true;
+        markRevealedIfComplete();
+    }
+
+    private void markRevealedIfComplete() {
+        if (entryAnimationFinished && contentShown && cardRevealedAt == NOT_REACHED) {
+            cardRevealedAt = now();
+        }
+    }
+
+    void countAssetCacheHit() {
+        assetCacheHits.incrementAndGet();
+    }
+
+    void countAssetCacheRevalidated() {
+        assetCacheRevalidated.incrementAndGet();
+    }
+
+    void countAssetCacheMiss() {
+        assetCacheMisses.incrementAndGet();
+    }
+
+    void countAssetCacheStale() {
+        assetCacheStale.incrementAndGet();
+    }
+
+    /**
+     * Returns true the first time it is called, so a session's metrics are delivered once.
+     */
+    boolean markDelivered() {
+        if (delivered) return false;
+        delivered = true;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "CheckoutMetrics{" +
+            "popup=" + popup +
+            ", webViewSource=" + webViewSource +
+            ", containerCreated=" + sinceOpen(containerCreatedAt) +
+            ", shellDrawn=" + sinceOpen(shellDrawnAt) +
+            ", skeletonShown=" + sinceOpen(skeletonShownAt) +
+            ", webViewReady=" + sinceOpen(webViewReadyAt) +
+            ", navigationStart=" + sinceOpen(navigationStartAt) +
+            ", commitVisible=" + sinceOpen(commitVisibleAt) +
+            ", firstVisualFrame=" + sinceOpen(firstVisualFrameAt) +
+            ", pageFinished=" + sinceOpen(pageFinishedAt) +
+            ", bridgeReady=" + sinceOpen(bridgeReadyAt) +
+            ", cardRevealed=" + sinceOpen(cardRevealedAt) +
+            ", assetCache=" + assetCacheHits + "/" + assetCacheRevalidated + "/" + assetCacheMisses +
+            "/" + assetCacheStale +
+            '}';
+    }
+}
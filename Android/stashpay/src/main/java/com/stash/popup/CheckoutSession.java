@@ -0,0 +1,81 @@
+package com.stash.popup;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * State of one checkout, from the openCheckout call until it is completed or dismissed.
+ *
+ * Shared by every presentation path (card Activity, overlay, popup and browser) so that
+ * "is a checkout presented" and "is a purchase processing" are read from one place. The state
+ * only moves forward and only through compare-and-set, so it can be advanced from the caller's
+ * thread, the main thread and the bridge without locks. The terminal transition can be won only
+ * once: whoever moves the session to {@link State#COMPLETED} or {@link State#DISMISSED} delivers
+ * the corresponding callback, and every later attempt is refused.
+ */
+public class CheckoutSession {
+
+    enum State {
+        /** Created, not yet opened. */
+        IDLE,
+        /** The container is being created. */
+        OPENING,
+        /** The checkout page is loading. */
+        LOADING,
+        /** The page is shown and the user can interact with it. */
+        INTERACTIVE,
+        /** A purchase is processing; the user cannot dismiss the checkout. */
+        PROCESSING,
+        /** The page reported a payment result. */
+        COMPLETED,
+        /** The checkout was closed without a payment result. */
+        DISMISSED;
+
+        boolean isTerminal() {
+            return this == COMPLETED || this == DISMISSED;
+        }
+    }
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.IDLE);
+    final boolean popup;
+    final CheckoutMetrics metrics;
+
+    CheckoutSession(boolean popup) {
+        this.popup = popup;
+        this.metrics = new CheckoutMetrics(popup);
+    }
+
+    State getState() {
+        return state.get();
+    }
+
+    /**
+     * Whether the checkout has been opened and has not yet completed or been dismissed.
+     */
+    boolean isActive() {
+        State current = state.get();
+        return current != State.IDLE && !current.isTerminal();
+    }
+
+    boolean isProcessing() {
+        return state.get() == State.PROCESSING;
+    }
+
+    /**
+     * Moves to {@code target} if that is a step forward from the current state. Terminal states
+     * can be reached from any non-terminal state. Returns true only for the call that made the
+     * transition.
+     */
+    boolean moveTo(State target) {
+        while (true) {
+            State current = state.get();
+            if (current.isTerminal()) return false;
+            if (!target.isTerminal() && target.ordinal() <= current.ordinal()) return false;
+            if (state.compareAndSet(current, target)) return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CheckoutSession{state=" + state.get() + ", popup=" + popup + '}';
+    }
+}
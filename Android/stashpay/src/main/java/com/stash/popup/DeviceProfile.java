@@ -0,0 +1,115 @@
+package com.stash.popup;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.os.Build;
+import android.util.DisplayMetrics;
+
+/**
+ * Immutable snapshot of the display properties the card UI depends on.
+ *
+ * Computed once per configuration and cached, so layout and touch handling read plain fields
+ * instead of querying resources and recomputing the tablet heuristics. {@link #get(Context)}
+ * returns the cached profile while the configuration is unchanged; {@link #invalidate()} drops it
+ * explicitly from {@code onConfigurationChanged}. Main thread only.
+ */
+public class DeviceProfile {
+    private static DeviceProfile cached;
+
+    final boolean isTablet;
+    final boolean isDarkTheme;
+    final float density;
+    final int widthPixels;
+    final int heightPixels;
+
+    /** Finger travel before a touch on the drag handle counts as a drag. */
+    final int dragSlopPx;
+    /** Upward drag distance that expands the card. */
+    final int expandDistancePx;
+    /** Upward drag distance over which the expand hint scales the card. */
+    final int expandHintRangePx;
+    /** Downward drag distance that dismisses the card. */
+    final int dismissDistancePx;
+    /** Release velocity, in px/s, above which a flick dismisses or expands the card. */
+    final int flingVelocityPx;
+
+    private final int orientation;
+    private final int screenWidthDp;
+    private final int screenHeightDp;
+    private final int densityDpi;
+    private final int uiMode;
+    private final int screenLayout;
+
+    /**
+     * Returns the profile for the context's current configuration, computing it only if the
+     * configuration changed since the last call.
+     */
+    static DeviceProfile get(Context context) {
+        Resources resources = context.getResources();
+        Configuration config = resources.getConfiguration();
+        DeviceProfile profile = cached;
+        if (profile == null || !profile.matches(config)) {
+            profile = new DeviceProfile(resources, config);
+            cached = profile;
+        }
+        return profile;
+    }
+
+    static void invalidate() {
+        cached = null;
+    }
+
+    private DeviceProfile(Resources resources, Configuration config) {
+        DisplayMetrics metrics = resources.getDisplayMetrics();
+        density = metrics.density;
+        widthPixels = metrics.widthPixels;
+        heightPixels = metrics.heightPixels;
+        isTablet = computeIsTablet(metrics, config);
+        isDarkTheme = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+            && (config.uiMode & Configuration.UI_MODE_NIGHT_MASK) == Configuration.UI_MODE_NIGHT_YES;
+
+        dragSlopPx = px(10);
+        expandDistancePx = px(80);
+        expandHintRangePx = px(100);
+        dismissDistancePx = (int)(heightPixels * (isTablet ? 0.15f : 0.25f));
+        flingVelocityPx = px(1000);
+
+        orientation = config.orientation;
+        screenWidthDp = config.screenWidthDp;
+        screenHeightDp = config.screenHeightDp;
+        densityDpi = config.densityDpi;
+        uiMode = config.uiMode;
+        screenLayout = config.screenLayout;
+    }
+
+    int px(int dp) {
+        return Math.round(dp * density);
+    }
+
+    private boolean matches(Configuration config) {
+        return config.orientation == orientation
+            && config.screenWidthDp == screenWidthDp
+            && config.screenHeightDp == screenHeightDp
+            && config.densityDpi == densityDpi
+            && config.uiMode == uiMode
+            && config.screenLayout == screenLayout;
+    }
+
+    private static boolean computeIsTablet(DisplayMetrics metrics, Configuration config) {
+        int smallerDimension = Math.min(metrics.widthPixels, metrics.heightPixels);
+        if (smallerDimension <= 0) return false;
+        float smallerDp = smallerDimension / metrics.density;
+
+        boolean isTabletBySize = smallerDp >= 600;
+
+        int screenSize = config.screenLayout & Configuration.SCREENLAYOUT_SIZE_MASK;
+        boolean isTabletByConfig = (screenSize == Configuration.SCREENLAYOUT_SIZE_LARGE ||
+                                    screenSize == Configuration.SCREENLAYOUT_SIZE_XLARGE);
+
+        float aspectRatio = (float)Math.max(metrics.widthPixels, metrics.heightPixels) / smallerDimension;
+        boolean isTabletByAspect = aspectRatio < 2.0f && smallerDp >= 500;
+
+        return isTabletBySize || isTabletByConfig || isTabletByAspect;
+    }
+}
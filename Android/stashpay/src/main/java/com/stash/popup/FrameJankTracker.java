@@ -0,0 +1,163 @@
+package com.stash.popup;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import java.util.Arrays;
+
+/**
+ * Records frame durations while one card animation or gesture runs and reports them as
+ * {@link AnimationFrameStats} when it ends.
+ *
+ * Uses the window's frame metrics on API 24+ and the interval between Choreographer frames
+ * before that. Nothing is registered unless an {@link StashPayCard.AnimationFrameStatsListener}
+ * is set, so the instrumentation costs a field read when disabled. Frames are recorded into
+ * arrays allocated on the first tracked phase and reused after that; sorting for percentiles happens once, when the phase ends. Main thread only.
+ */
+public class FrameJankTracker implements Choreographer.FrameCallback {
+    private static final String TAG = "StashPayCard";
+    private static final int MAX_FRAMES = 1024;
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private final Activity activity;
+    /** Allocated on the first tracked phase, so a tracker that never records holds no buffers. */
+    private long[] frameNanos;
+    private long[] sortScratch;
+    private Object frameMetricsListener;
+
+    private AnimationFrameStats.Phase phase;
+    private int frameCount;
+    private long budgetNanos;
+    private long startedAt;
+    private long lastFrameTimeNanos;
+
+    FrameJankTracker(Activity activity) {
+        this.activity = activity;
+    }
+
+    /**
+     * Starts recording a phase, ending and reporting the current one first.
+     */
+    void begin(AnimationFrameStats.Phase newPhase) {
+        if (StashPayCard.getInstance().getAnimationFrameStatsListener() == null) return;
+        if (phase == newPhase) return;
+        end();
+
+        try {
+            if (frameNanos == null) {
+                frameNanos = new long[MAX_FRAMES];
+                sortScratch = new long[MAX_FRAMES];
+            }
+            phase = newPhase;
+            frameCount = 0;
+            startedAt = CheckoutMetrics.now();
+            lastFrameTimeNanos = 0;
+            float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+            budgetNanos = (long) (1_000_000_000L / (refreshRate > 0 ? refreshRate : 60f));
+
+            Window window = activity.getWindow();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && window != null) {
+                registerFrameMetrics(window);
+            } else {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error starting frame tracking: " + e.getMessage(), e);
+            phase = null;
+        }
+    }
+
+    /**
+     * Ends the current phase, if any, and reports it.
+     */
+    void end() {
+        AnimationFrameStats.Phase ended = phase;
+        if (ended == null) return;
+        phase = null;
+        unregister();
+        report(ended);
+    }
+
+    /**
+     * Ends the current phase only if it is {@code expected}.
+     */
+    void end(AnimationFrameStats.Phase expected) {
+        if (phase == expected) {
+            end();
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (phase == null) return;
+        if (lastFrameTimeNanos != 0) {
+            record(frameTimeNanos - lastFrameTimeNanos);
+        }
+        lastFrameTimeNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void record(long durationNanos) {
+        if (frameCount < MAX_FRAMES) {
+            frameNanos[frameCount++] = durationNanos;
+        }
+    }
+
+    private void registerFrameMetrics(Window window) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return;
+        if (frameMetricsListener == null) {
+            frameMetricsListener = (Window.OnFrameMetricsAvailableListener) (w, metrics, dropCount) -> {
+                if (phase != null) {
+                    record(metrics.getMetric(FrameMetrics.TOTAL_DURATION));
+                }
+            };
+        }
+        window.addOnFrameMetricsAvailableListener(
+            (Window.OnFrameMetricsAvailableListener) frameMetricsListener, MAIN_HANDLER);
+    }
+
+    private void unregister() {
+        Choreographer.getInstance().removeFrameCallback(this);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && frameMetricsListener != null) {
+            try {
+                Window window = activity.getWindow();
+                if (window != null) {
+                    window.removeOnFrameMetricsAvailableListener(
+                        (Window.OnFrameMetricsAvailableListener) frameMetricsListener);
+                }
+            } catch (Exception e) {
+                // Not registered, e.g. the window was torn down first
+            }
+        }
+    }
+
+    private void report(AnimationFrameStats.Phase ended) {
+        int count = frameCount;
+        int janky = 0;
+        int frozen = 0;
+        long frozenNanos = AnimationFrameStats.FROZEN_FRAME_MS * 1_000_000L;
+        for (int i = 0; i < count; i++) {
+            long duration = frameNanos[i];
+            if (duration > budgetNanos) janky++;
+            if (duration > frozenNanos) frozen++;
+        }
+        System.arraycopy(frameNanos, 0, sortScratch, 0, count);
+        Arrays.sort(sortScratch, 0, count);
+
+        AnimationFrameStats stats = new AnimationFrameStats(ended, count, janky, frozen,
+            percentileMs(count, 0.50f), percentileMs(count, 0.95f), CheckoutMetrics.now() - startedAt);
+        StashPayCard.getInstance().notifyAnimationFrameStats(stats);
+    }
+
+    private float percentileMs(int count, float percentile) {
+        if (count == 0) return 0f;
+        int index = Math.min(count - 1, (int) Math.ceil(percentile * count) - 1);
+        return sortScratch[Math.max(index, 0)] / 1_000_000f;
+    }
+}
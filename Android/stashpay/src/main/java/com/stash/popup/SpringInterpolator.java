@@ -2,32 +2,87 @@ package com.stash.popup;
 
 import android.view.animation.Interpolator;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
- * Spring-like interpolator that closely matches iOS spring animations with damping 0.85.
- * This creates fluid, natural motion similar to iOS UIView spring animations.
+ * Spring-like interpolator modelled on iOS UIView spring animations. The default spring
+ * (damping 0.85, stiffness 400, mass 1) matches the card's iOS motion; other springs can be
+ * built with {@link #SpringInterpolator(float, float, float)}.
  * Uses a damped harmonic oscillator model to simulate spring physics.
+ *
+ * The curve for a given (damping, stiffness, mass) is sampled once into a lookup table that is
+ * shared by every interpolator with the same parameters; {@link #getInterpolation(float)} then
+ * costs one table lookup and a linear interpolation instead of exp, cos and sin per frame.
  */
 public class SpringInterpolator implements Interpolator {
-    private static final float DAMPING = 0.85f;
-    private static final float STIFFNESS = 400f;
-    private static final float MASS = 1f;
-    
-    private static final float OMEGA = (float) Math.sqrt(STIFFNESS / MASS);
-    private static final float DAMPED_OMEGA = OMEGA * (float) Math.sqrt(1 - DAMPING * DAMPING);
-    
+    private static final float DEFAULT_DAMPING = 0.85f;
+    private static final float DEFAULT_STIFFNESS = 400f;
+    private static final float DEFAULT_MASS = 1f;
+
+    private static final int TABLE_SIZE = 512;
+    private static final Map<String, float[]> TABLES = new HashMap<>();
+
+    private final float[] table;
+
+    public SpringInterpolator() {
+        this(DEFAULT_DAMPING, DEFAULT_STIFFNESS, DEFAULT_MASS);
+    }
+
+    /**
+     * @param damping Damping ratio; 1 is critically damped, below 1 oscillates
+     * @param stiffness Spring constant
+     * @param mass Mass on the spring
+     */
+    public SpringInterpolator(float damping, float stiffness, float mass) {
+        table = tableFor(damping, stiffness, mass);
+    }
+
     @Override
     public float getInterpolation(float input) {
         if (input <= 0f) return 0f;
         if (input >= 1f) return 1f;
-        
-        float t = input;
-        float expTerm = (float) Math.exp(-DAMPING * OMEGA * t);
-        float cosTerm = (float) Math.cos(DAMPED_OMEGA * t);
-        float sinTerm = (float) Math.sin(DAMPED_OMEGA * t);
-        float dampingRatio = DAMPING * OMEGA / DAMPED_OMEGA;
-        
-        float result = 1f - expTerm * (cosTerm + dampingRatio * sinTerm);
-        
-        return Math.max(0f, Math.min(1f, result));
+
+        float position = input * TABLE_SIZE;
+        int index = (int) position;
+        float fraction = position - index;
+        return table[index] + (table[index + 1] - table[index]) * fraction;
+    }
+
+    private static float[] tableFor(float damping, float stiffness, float mass) {
+        String key = damping + "/" + stiffness + "/" + mass;
+        synchronized (TABLES) {
+            float[] table = TABLES.get(key);
+            if (table == null) {
+                table = buildTable(damping, stiffness, mass);
+                TABLES.put(key, table);
+            }
+            return table;
+        }
+    }
+
+    private static float[] buildTable(double damping, double stiffness, double mass) {
+        float[] table = new float[TABLE_SIZE + 1];
+        double omega = Math.sqrt(stiffness / mass);
+        for (int i = 0; i <= TABLE_SIZE; i++) {
+            double t = (double) i / TABLE_SIZE;
+            double result;
+            if (damping < 1) {
+                double dampedOmega = omega * Math.sqrt(1 - damping * damping);
+                double dampingRatio = damping * omega / dampedOmega;
+                result = 1 - Math.exp(-damping * omega * t)
+                    * (Math.cos(dampedOmega * t) + dampingRatio * Math.sin(dampedOmega * t));
+            } else if (damping == 1) {
+                result = 1 - Math.exp(-omega * t) * (1 + omega * t);
+            } else {
+                double root = omega * Math.sqrt(damping * damping - 1);
+                double r1 = -damping * omega + root;
+                double r2 = -damping * omega - root;
+                result = 1 - (r2 * Math.exp(r1 * t) - r1 * Math.exp(r2 * t)) / (r2 - r1);
+            }
+            table[i] = (float) Math.max(0, Math.min(1, result));
+        }
+        table[TABLE_SIZE] = 1f;
+        return table;
     }
 }
@@ -0,0 +1,149 @@
+package com.stash.popup;
+
+import android.view.Choreographer;
+
+/**
+ * Physics-based spring that drives a single value frame by frame.
+ *
+ * Unlike a fixed-duration animator, the spring starts from the current value and velocity, so it
+ * can continue from a finger's release velocity and can be retargeted while it is moving without
+ * restarting from zero. Each frame solves the damped harmonic oscillator exactly for the elapsed
+ * time, which keeps it stable on dropped frames and allocation-free. Main thread only.
+ */
+public class SpringMotion implements Choreographer.FrameCallback {
+    private static final float VALUE_THRESHOLD = 0.5f;
+    private static final float VELOCITY_THRESHOLD = 20f;
+    private static final float MAX_FRAME_SECONDS = 0.064f;
+
+    /**
+     * Receives the spring's value on every frame and once when it comes to rest.
+     */
+    interface Listener {
+        void onSpringUpdate(SpringMotion spring, float value);
+        void onSpringAtRest(SpringMotion spring);
+    }
+
+    private final Listener listener;
+    private float stiffness;
+    private float dampingRatio;
+
+    private float value;
+    private float velocity;
+    private float target;
+    private long lastFrameNanos;
+    private boolean running;
+
+    /**
+     * @param stiffness Spring constant for a unit mass; higher is faster
+     * @param dampingRatio 1 for critical damping, below 1 to overshoot
+     */
+    SpringMotion(float stiffness, float dampingRatio, Listener listener) {
+        this.stiffness = stiffness;
+        this.dampingRatio = dampingRatio;
+        this.listener = listener;
+    }
+
+    void setSpring(float stiffness, float dampingRatio) {
+        this.stiffness = stiffness;
+        this.dampingRatio = dampingRatio;
+    }
+
+    /**
+     * Starts the spring from {@code start} with {@code startVelocity} units per second.
+     * If it is already running, its value and velocity are replaced.
+     */
+    void start(float start, float startVelocity, float target) {
+        value = start;
+        velocity = startVelocity;
+        retarget(target);
+    }
+
+    /**
+     * Moves the rest position, keeping the current value and velocity.
+     */
+    void retarget(float target) {
+        this.target = target;
+        if (!running) {
+            running = true;
+            lastFrameNanos = System.nanoTime();
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Stops the spring where it is. The listener is not notified.
+     */
+    void cancel() {
+        if (!running) return;
+        running = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    float getVelocity() {
+        return velocity;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) return;
+        float dt = (frameTimeNanos - lastFrameNanos) / 1e9f;
+        lastFrameNanos = frameTimeNanos;
+        step(Math.max(0f, Math.min(dt, MAX_FRAME_SECONDS)));
+
+        boolean atRest = Math.abs(value - target) < VALUE_THRESHOLD && Math.abs(velocity) < VELOCITY_THRESHOLD;
+        if (atRest) {
+            value = target;
+            velocity = 0f;
+            running = false;
+        }
+        listener.onSpringUpdate(this, value);
+        if (atRest) {
+            listener.onSpringAtRest(this);
+        } else {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private void step(float t) {
+        float x = value - target;
+        float v = velocity;
+        float omega = (float) Math.sqrt(stiffness);
+        float zeta = dampingRatio;
+        float newX;
+        float newV;
+
+        if (zeta < 1f) {
+            float dampedOmega = omega * (float) Math.sqrt(1f - zeta * zeta);
+            float a = x;
+            float b = (v + zeta * omega * x) / dampedOmega;
+            float decay = (float) Math.exp(-zeta * omega * t);
+            float cos = (float) Math.cos(dampedOmega * t);
+            float sin = (float) Math.sin(dampedOmega * t);
+            newX = decay * (a * cos + b * sin);
+            newV = decay * ((b * dampedOmega - zeta * omega * a) * cos - (a * dampedOmega + zeta * omega * b) * sin);
+        } else if (zeta == 1f) {
+            float a = x;
+            float b = v + omega * x;
+            float decay = (float) Math.exp(-omega * t);
+            newX = (a + b * t) * decay;
+            newV = (b - omega * (a + b * t)) * decay;
+        } else {
+            float root = omega * (float) Math.sqrt(zeta * zeta - 1f);
+            float r1 = -zeta * omega + root;
+            float r2 = -zeta * omega - root;
+            float c2 = (v - r1 * x) / (r2 - r1);
+            float c1 = x - c2;
+            float e1 = (float) Math.exp(r1 * t);
+            float e2 = (float) Math.exp(r2 * t);
+            newX = c1 * e1 + c2 * e2;
+            newV = c1 * r1 * e1 + c2 * r2 * e2;
+        }
+
+        value = target + newX;
+        velocity = newV;
+    }
+}
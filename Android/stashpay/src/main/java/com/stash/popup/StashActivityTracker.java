@@ -0,0 +1,133 @@
+package com.stash.popup;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Follows the app's Activities through {@link Application.ActivityLifecycleCallbacks} so the SDK
+ * always presents on the current foreground Activity without holding on to finished ones.
+ *
+ * The host Activity is only ever referenced weakly. The current one is whichever was most
+ * recently passed to {@link StashPayCard#setActivity(Activity)} or resumed. When an Activity is
+ * destroyed, whatever the SDK attached to it is released. The SDK's own card Activity is never
+ * treated as a host. {@link #getActivity()} may be called from any thread.
+ */
+public class StashActivityTracker implements Application.ActivityLifecycleCallbacks {
+    private static final String TAG = "StashPayCard";
+    private static StashActivityTracker instance;
+
+    private volatile WeakReference<Activity> currentActivity;
+    private boolean registered;
+    /** A host Activity was paused and none has resumed since. Main thread only. */
+    private boolean hostPaused;
+
+    public static synchronized StashActivityTracker getInstance() {
+        if (instance == null) {
+            instance = new StashActivityTracker();
+        }
+        return instance;
+    }
+
+    private StashActivityTracker() {
+    }
+
+    /**
+     * Registers for the application's Activity lifecycle callbacks. Only the first call has an effect.
+     */
+    synchronized void register(Context context) {
+        if (registered || context == null) return;
+        try {
+            Context applicationContext = context.getApplicationContext();
+            if (applicationContext instanceof Application) {
+                ((Application) applicationContext).registerActivityLifecycleCallbacks(this);
+                registered = true;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error registering activity lifecycle callbacks: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Makes {@code activity} the current host until another one is set or resumed.
+     */
+    void setActivity(Activity activity) {
+        currentActivity = activity != null ? new WeakReference<>(activity) : null;
+        if (activity != null) {
+            register(activity);
+        }
+    }
+
+    /**
+     * Returns the Activity to present on, or null if no host Activity is alive.
+     */
+    Activity getActivity() {
+        WeakReference<Activity> reference = currentActivity;
+        Activity activity = reference != null ? reference.get() : null;
+        if (activity == null || activity.isFinishing()) return null;
+        return activity;
+    }
+
+    /**
+     * Whether the app's host Activity is paused, e.g. behind the card Activity or in the background.
+     * Main thread only.
+     */
+    boolean isHostPaused() {
+        return hostPaused;
+    }
+
+    private static boolean isHost(Activity activity) {
+        return !(activity instanceof StashPayCardPortraitActivity);
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+        if (isHost(activity)) {
+            currentActivity = new WeakReference<>(activity);
+            hostPaused = false;
+            StashWebViewPool.getInstance().onHostResumed();
+        }
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+        WeakReference<Activity> reference = currentActivity;
+        if (reference != null && reference.get() == activity) {
+            currentActivity = null;
+        }
+        if (!isHost(activity)) return;
+        try {
+            StashPayCardPlugin.getInstance().onHostActivityDestroyed(activity);
+            StashCheckoutPreloader.getInstance().onHostActivityDestroyed(activity);
+        } catch (Exception e) {
+            Log.e(TAG, "Error releasing views of destroyed activity: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+        if (isHost(activity)) {
+            hostPaused = true;
+        }
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+}
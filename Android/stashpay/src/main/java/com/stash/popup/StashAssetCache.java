@@ -0,0 +1,750 @@
+package com.stash.popup;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import androidx.webkit.ServiceWorkerClientCompat;
+import androidx.webkit.ServiceWorkerControllerCompat;
+import androidx.webkit.WebViewFeature;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Disk cache for the checkout's versioned static assets, served through
+ * {@code shouldInterceptRequest} of the checkout WebViews and of service workers.
+ *
+ * Only GET requests to checkout origins registered with {@link #registerCheckoutUrl(String)} for
+ * content-hashed scripts, stylesheets, fonts and images (for example {@code app.3f9a2b1c.js}) are
+ * handled; third-party hosts and everything else, including the checkout page itself,
+ * goes to the WebView's network stack as before. Such a URL never changes content, so a cached
+ * copy is served without touching the network until the lifetime its {@code Cache-Control} header
+ * gave ends, after which it is revalidated with its ETag. A response without {@code max-age} or
+ * {@code immutable} is revalidated on every use. The cache lives in the SDK's own directory so it is not evicted
+ * with, or shared with, the host's WebView HTTP cache. Entries are kept in least-recently-used
+ * order within a size bound and are read by memory-mapping the file. Assets are fetched without
+ * cookies, and a response is only stored if it is a plain 200 that is not {@code private} or
+ * {@code no-store}, does not vary by request header and carries no origin-specific CORS grant.
+ * Error responses are passed to the WebView as sent and redirects are left to it; an outdated
+ * entry is only served when the network request itself fails.
+ *
+ * Service-worker fetches only go through the cache once the app opts in with
+ * {@link #setServiceWorkerClientEnabled(boolean)}, since the SDK's client replaces the app's own.
+ *
+ * Hits, revalidations, misses and stale copies are counted on the {@link CheckoutMetrics} of the checkout
+ * that made the request. Thread-safe; requests arrive on WebView's IO threads.
+ */
+public class StashAssetCache {
+    private static final String TAG = "StashPayCard";
+    private static final String DIRECTORY = "stashpay_assets";
+    private static final long DEFAULT_MAX_BYTES = 20L * 1024 * 1024;
+    private static final long ONE_YEAR_S = 365L * 24 * 60 * 60;
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * A file name ending in a content hash: 8 to 64 lowercase hex characters with both digits and
+     * letters ({@code app.3f9a2b1c.js}), or 8 to 22 base64url characters with digits and both
+     * cases ({@code index-BdQq4o7x.js}). Plain words and identifiers never qualify.
+     */
+    private static final Pattern HASHED_ASSET = Pattern.compile(
+        ".*[./-](?:(?=[0-9a-f]*[0-9])(?=[0-9a-f]*[a-f])[0-9a-f]{8,64}"
+            + "|(?=[\\w-]*[0-9])(?=[\\w-]*[a-z])(?=[\\w-]*[A-Z])[\\w-]{8,22})"
+            + "\\.(?:js|mjs|css|woff2?|ttf|otf|svg|png|jpe?g|gif|webp|avif|wasm)$");
+
+    /** Response headers replayed from the cache; encoding and length are recomputed. */
+    private static final List<String> STORED_HEADERS = Arrays.asList(
+        "content-type", "access-control-allow-origin",
+        "timing-allow-origin", "cross-origin-resource-policy", "cache-control", "etag", "last-modified");
+
+    /** Request headers never forwarded: the cache does its own conditional requests. */
+    private static final List<String> DROPPED_REQUEST_HEADERS = Arrays.asList(
+        "accept-encoding", "if-none-match", "if-modified-since", "range", "cookie");
+
+    private static StashAssetCache instance;
+
+    /** Entry key to file size, in access order. Guarded by this. */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(64, 0.75f, true);
+    /** Origins checkouts were opened on, as {@code https://host[:port]}; only these are cached. */
+    private final Set<String> checkoutOrigins = Collections.synchronizedSet(new HashSet<String>());
+    private File directory;
+    private long totalBytes;
+    private volatile long maxBytes = DEFAULT_MAX_BYTES;
+    private boolean serviceWorkerClientEnabled;
+    private boolean serviceWorkerClientInstalled;
+
+    public static synchronized StashAssetCache getInstance() {
+        if (instance == null) {
+            instance = new StashAssetCache();
+        }
+        return instance;
+    }
+
+    private StashAssetCache() {
+    }
+
+    /**
+     * Sets the size bound of the cache. 0 disables the cache and deletes its files.
+     */
+    void setMaxSizeBytes(long bytes) {
+        maxBytes = Math.max(0, bytes);
+        synchronized (this) {
+            if (directory != null) {
+                trimToSize();
+            }
+        }
+    }
+
+    /**
+     * Sets whether service-worker fetches for the checkout's hosts go through the cache.
+     * WebView has a single service worker client per process and no way to read the current one,
+     * so enabling this replaces any client the app set with {@code ServiceWorkerControllerCompat},
+     * and disabling it after it was installed clears the client. Off by default.
+     */
+    synchronized void setServiceWorkerClientEnabled(boolean enabled) {
+        serviceWorkerClientEnabled = enabled;
+        if (enabled) {
+            if (directory != null) {
+                installServiceWorkerClient();
+            }
+        } else if (serviceWorkerClientInstalled) {
+            serviceWorkerClientInstalled = false;
+            try {
+                ServiceWorkerControllerCompat.getInstance().setServiceWorkerClient(null);
+            } catch (Exception e) {
+                Log.e(TAG, "Error removing service worker client: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Opens the cache directory and reads its index ahead of the first checkout. Any thread.
+     */
+    void warmUp(Context context) {
+        if (maxBytes > 0) {
+            ensureInitialized(context);
+        }
+    }
+
+    /**
+     * Allows the cache to serve assets from the origin of {@code checkoutUrl}. Called when a
+     * checkout is opened or preloaded; the cache never learns origins from the requests it sees.
+     */
+    void registerCheckoutUrl(String checkoutUrl) {
+        try {
+            String origin = originOf(Uri.parse(checkoutUrl));
+            if (origin != null) {
+                checkoutOrigins.add(origin);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error registering checkout origin: " + e.getMessage(), e);
+        }
+    }
+
+    private static String originOf(Uri uri) {
+        if (uri == null || !"https".equalsIgnoreCase(uri.getScheme()) || uri.getEncodedAuthority() == null) {
+            return null;
+        }
+        return "https://" + uri.getEncodedAuthority().toLowerCase(Locale.US);
+    }
+
+    /**
+     * Serves {@code request} from the cache, fetching and storing it on a miss. Returns null for
+     * requests the cache does not handle, which the WebView then loads itself.
+     */
+    WebResourceResponse intercept(Context context, WebResourceRequest request, CheckoutMetrics metrics) {
+        if (!isCacheable(request) || !ensureInitialized(context)) return null;
+        return serve(request, metrics);
+    }
+
+    private WebResourceResponse serve(WebResourceRequest request, CheckoutMetrics metrics) {
+        String url = request.getUrl().toString();
+        String key = keyFor(url);
+        CachedAsset cached = read(key);
+        if (cached != null && cached.isFresh()) {
+            if (metrics != null) metrics.countAssetCacheHit();
+            return cached.toResponse();
+        }
+
+        HttpURLConnection connection = null;
+        try {
+            connection = openConnection(url, request.getRequestHeaders());
+            if (cached != null && cached.etag != null) {
+                connection.setRequestProperty("If-None-Match", cached.etag);
+            }
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                cached.expiresAt = expiryFor(connection.getHeaderField("Cache-Control"));
+                connection.disconnect();
+                rewriteHeader(key, cached);
+                if (metrics != null) metrics.countAssetCacheRevalidated();
+                return cached.toResponse();
+            }
+            if (status >= HttpURLConnection.HTTP_BAD_REQUEST && status < 600) {
+                // The server's answer wins over any stale copy; a pulled asset is also forgotten
+                if (status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_GONE) {
+                    remove(key);
+                }
+                return errorResponse(connection, status);
+            }
+            if (status < HttpURLConnection.HTTP_OK || status >= HttpURLConnection.HTTP_MULT_CHOICE) {
+                // Redirects cannot be returned from shouldInterceptRequest: the WebView loads it itself
+                connection.disconnect();
+                return null;
+            }
+            if (metrics != null) metrics.countAssetCacheMiss();
+            return networkResponse(connection, key, url, status);
+        } catch (IOException e) {
+            Log.e(TAG, "Error fetching asset " + url + ": " + e.getMessage(), e);
+            if (connection != null) {
+                connection.disconnect();
+            }
+            if (cached != null) {
+                // Offline: the stale copy of an immutable URL is still right
+                if (metrics != null) metrics.countAssetCacheStale();
+                return cached.toResponse();
+            }
+            return null;
+        } catch (Exception e) {
+            Log.e(TAG, "Error fetching asset " + url + ": " + e.getMessage(), e);
+            if (connection != null) {
+                connection.disconnect();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Hands a 4xx or 5xx response to the WebView as the server sent it, without storing it.
+     */
+    private static WebResourceResponse errorResponse(HttpURLConnection connection, int status) throws IOException {
+        CachedAsset asset = new CachedAsset();
+        asset.status = status;
+        String reason = connection.getResponseMessage();
+        asset.reason = reason != null && !reason.isEmpty() ? reason : "Error";
+        asset.setContentType(connection.getContentType());
+        InputStream body = connection.getErrorStream();
+        return asset.toResponse(body != null ? body : new ByteArrayInputStream(new byte[0]));
+    }
+
+    private boolean isCacheable(WebResourceRequest request) {
+        if (maxBytes <= 0 || request == null || !"GET".equalsIgnoreCase(request.getMethod())) return false;
+        Uri uri = request.getUrl();
+        if (uri == null || !checkoutOrigins.contains(originOf(uri))) return false;
+        Map<String, String> headers = request.getRequestHeaders();
+        if (headers != null) {
+            for (String name : headers.keySet()) {
+                if ("range".equalsIgnoreCase(name)) return false;
+            }
+        }
+        String path = uri.getPath();
+        return path != null && HASHED_ASSET.matcher(path).matches();
+    }
+
+    private synchronized boolean ensureInitialized(Context context) {
+        if (directory != null) return true;
+        if (context == null) return false;
+        try {
+            File dir = new File(context.getApplicationContext().getCacheDir(), DIRECTORY);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                Log.e(TAG, "Cannot create asset cache directory");
+                return false;
+            }
+            File[] files = dir.listFiles();
+            if (files != null) {
+                // Least recently used first, so the index starts in access order
+                Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+                for (File file : files) {
+                    if (file.getName().endsWith(".tmp")) {
+                        file.delete();
+                        continue;
+                    }
+                    index.put(file.getName(), file.length());
+                    totalBytes += file.length();
+                }
+            }
+            directory = dir;
+            trimToSize();
+            if (serviceWorkerClientEnabled) {
+                installServiceWorkerClient();
+            }
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error opening asset cache: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Routes service-worker fetches for the checkout's hosts through the cache, so a checkout
+     * page that fetches its assets from a service worker gets the same hits. Only called once the
+     * app has opted in, as this replaces any service worker client set by the app.
+     */
+    private synchronized void installServiceWorkerClient() {
+        if (serviceWorkerClientInstalled) return;
+        if (!WebViewFeature.isFeatureSupported(WebViewFeature.SERVICE_WORKER_BASIC_USAGE)
+                || !WebViewFeature.isFeatureSupported(WebViewFeature.SERVICE_WORKER_SHOULD_INTERCEPT_REQUEST)) {
+            return;
+        }
+        serviceWorkerClientInstalled = true;
+        ServiceWorkerControllerCompat.getInstance().setServiceWorkerClient(new ServiceWorkerClientCompat() {
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebResourceRequest request) {
+                try {
+                    if (!isCacheable(request)) {
+                        return null;
+                    }
+                    return serve(request, null);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error intercepting service worker request: " + e.getMessage(), e);
+                    return null;
+                }
+            }
+        });
+    }
+
+    private HttpURLConnection openConnection(String url, Map<String, String> requestHeaders) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setUseCaches(false);
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                if (!DROPPED_REQUEST_HEADERS.contains(header.getKey().toLowerCase(Locale.US))) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+        }
+        // Static assets are fetched without credentials, so nothing user-specific is ever stored
+        return connection;
+    }
+
+    /**
+     * Hands a 2xx network response to the WebView, storing the body as it is read if the
+     * response may be cached.
+     */
+    private WebResourceResponse networkResponse(HttpURLConnection connection, String key, String url,
+                                                int status) throws IOException {
+        CachedAsset asset = new CachedAsset();
+        asset.url = url;
+        asset.status = status;
+        asset.reason = connection.getResponseMessage();
+        asset.etag = connection.getHeaderField("ETag");
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            String name = header.getKey();
+            if (name == null || header.getValue() == null || header.getValue().isEmpty()) continue;
+            if (STORED_HEADERS.contains(name.toLowerCase(Locale.US))) {
+                asset.headers.put(name, header.getValue().get(0));
+            }
+        }
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        asset.expiresAt = expiryFor(cacheControl);
+        asset.setContentType(connection.getContentType());
+
+        InputStream body = connection.getInputStream();
+        if (body == null) {
+            body = new ByteArrayInputStream(new byte[0]);
+        }
+        if (isStorable(connection, status, cacheControl)) {
+            try {
+                body = new CachingInputStream(body, key, asset);
+            } catch (IOException e) {
+                Log.e(TAG, "Error starting asset cache write: " + e.getMessage(), e);
+            }
+        }
+        return asset.toResponse(body);
+    }
+
+    /**
+     * Whether a response may be written to the shared disk cache. Vary on Accept-Encoding alone is
+     * allowed: the body is stored decoded and replayed without a Content-Encoding.
+     */
+    private static boolean isStorable(HttpURLConnection connection, int status, String cacheControl) {
+        if (status != HttpURLConnection.HTTP_OK) return false;
+        if (cacheControl != null) {
+            String directives = cacheControl.toLowerCase(Locale.US);
+            if (directives.contains("no-store") || directives.contains("private")) return false;
+        }
+        String vary = connection.getHeaderField("Vary");
+        if (vary != null) {
+            for (String header : vary.split(",")) {
+                String name = header.trim();
+                if (!name.isEmpty() && !"accept-encoding".equalsIgnoreCase(name)) return false;
+            }
+        }
+        String allowOrigin = connection.getHeaderField("Access-Control-Allow-Origin");
+        return allowOrigin == null || "*".equals(allowOrigin.trim());
+    }
+
+    /**
+     * Returns when an entry with this Cache-Control stops being fresh, as a wall-clock time.
+     * Without an explicit {@code max-age} or {@code immutable} the entry is stale at once, so it
+     * is revalidated before each use rather than trusted for a lifetime the server never gave.
+     */
+    private static long expiryFor(String cacheControl) {
+        long now = System.currentTimeMillis();
+        if (cacheControl == null) return 0;
+        String directives = cacheControl.toLowerCase(Locale.US);
+        if (directives.contains("immutable")) return Long.MAX_VALUE;
+        if (directives.contains("no-cache")) return 0;
+        for (String directive : directives.split(",")) {
+            directive = directive.trim();
+            if (directive.startsWith("max-age=")) {
+                try {
+                    long seconds = Long.parseLong(directive.substring("max-age=".length()).trim());
+                    return seconds >= ONE_YEAR_S ? Long.MAX_VALUE : now + seconds * 1000;
+                } catch (NumberFormatException e) {
+                    break;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private CachedAsset read(String key) {
+        File file;
+        synchronized (this) {
+            if (index.get(key) == null) return null;
+            file = new File(directory, key);
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CachedAsset asset = CachedAsset.readHeader(mapped);
+            // The mapping stays valid after the channel is closed
+            asset.body = mapped.slice();
+            file.setLastModified(System.currentTimeMillis());
+            return asset;
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading cached asset: " + e.getMessage(), e);
+            remove(key);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void rewriteHeader(String key, CachedAsset asset) {
+        File tmp = null;
+        FileOutputStream out = null;
+        try {
+            synchronized (this) {
+                tmp = new File(directory, key + "." + Thread.currentThread().getId() + ".tmp");
+            }
+            out = new FileOutputStream(tmp);
+            asset.writeHeader(out);
+            ByteBuffer body = asset.body.duplicate();
+            out.getChannel().write(body);
+            out.close();
+            out = null;
+            commit(key, tmp);
+        } catch (Exception e) {
+            Log.e(TAG, "Error updating cached asset: " + e.getMessage(), e);
+            if (tmp != null) tmp.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private synchronized void commit(String key, File tmp) {
+        if (directory == null || maxBytes <= 0) {
+            tmp.delete();
+            return;
+        }
+        File target = new File(directory, key);
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            return;
+        }
+        Long previous = index.put(key, target.length());
+        totalBytes += target.length() - (previous != null ? previous : 0);
+        trimToSize();
+    }
+
+    private synchronized void remove(String key) {
+        Long size = index.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        if (directory != null) {
+            new File(directory, key).delete();
+        }
+    }
+
+    private synchronized void trimToSize() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            totalBytes -= eldest.getValue();
+            new File(directory, eldest.getKey()).delete();
+            it.remove();
+        }
+    }
+
+    private static String keyFor(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                key.append(String.format(Locale.US, "%02x", b));
+            }
+            return key.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(url.hashCode()) + Integer.toHexString(url.length());
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing to do
+        }
+    }
+
+    /**
+     * One response, stored as a length-prefixed header followed by the body.
+     */
+    private static class CachedAsset {
+        String url;
+        int status = HttpURLConnection.HTTP_OK;
+        String reason;
+        String mimeType = "application/octet-stream";
+        String encoding;
+        String etag;
+        long expiresAt;
+        final Map<String, String> headers = new HashMap<>();
+        ByteBuffer body;
+
+        boolean isFresh() {
+            return System.currentTimeMillis() < expiresAt;
+        }
+
+        void setContentType(String contentType) {
+            if (contentType == null) return;
+            String[] parts = contentType.split(";");
+            mimeType = parts[0].trim();
+            for (int i = 1; i < parts.length; i++) {
+                String part = parts[i].trim();
+                if (part.toLowerCase(Locale.US).startsWith("charset=")) {
+                    encoding = part.substring("charset=".length()).replace("\"", "");
+                }
+            }
+        }
+
+        WebResourceResponse toResponse() {
+            return toResponse(new ByteBufferInputStream(body.duplicate()));
+        }
+
+        WebResourceResponse toResponse(InputStream stream) {
+            String phrase = reason != null && !reason.isEmpty() ? reason : "OK";
+            return new WebResourceResponse(mimeType, encoding, status, phrase, new HashMap<>(headers), stream);
+        }
+
+        void writeHeader(java.io.OutputStream out) throws IOException {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(header);
+            data.writeInt(FORMAT_VERSION);
+            data.writeUTF(url != null ? url : "");
+            data.writeInt(status);
+            data.writeUTF(reason != null ? reason : "");
+            data.writeUTF(mimeType);
+            data.writeUTF(encoding != null ? encoding : "");
+            data.writeUTF(etag != null ? etag : "");
+            data.writeLong(expiresAt);
+            data.writeInt(headers.size());
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                data.writeUTF(entry.getKey());
+                data.writeUTF(entry.getValue());
+            }
+            data.flush();
+            DataOutputStream prefix = new DataOutputStream(out);
+            prefix.writeInt(header.size());
+            header.writeTo(out);
+        }
+
+        /**
+         * Reads the header and leaves {@code buffer} positioned at the start of the body.
+         */
+        static CachedAsset readHeader(ByteBuffer buffer) throws IOException {
+            int length = buffer.getInt();
+            byte[] header = new byte[length];
+            buffer.get(header);
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(header));
+            if (data.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown cache entry format");
+            }
+            CachedAsset asset = new CachedAsset();
+            asset.url = data.readUTF();
+            asset.status = data.readInt();
+            String reason = data.readUTF();
+            asset.reason = reason.isEmpty() ? null : reason;
+            asset.mimeType = data.readUTF();
+            String encoding = data.readUTF();
+            asset.encoding = encoding.isEmpty() ? null : encoding;
+            String etag = data.readUTF();
+            asset.etag = etag.isEmpty() ? null : etag;
+            asset.expiresAt = data.readLong();
+            int count = data.readInt();
+            for (int i = 0; i < count; i++) {
+                asset.headers.put(data.readUTF(), data.readUTF());
+            }
+            return asset;
+        }
+    }
+
+    /**
+     * Streams a mapped body to the WebView without copying it onto the heap first.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) return -1;
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Passes the network body through to the WebView while writing it to a temporary file,
+     * which becomes the cache entry once the body has been read to the end.
+     */
+    private class CachingInputStream extends FilterInputStream {
+        private final String key;
+        private final File tmp;
+        private FileOutputStream out;
+        private long written;
+
+        CachingInputStream(InputStream in, String key, CachedAsset asset) throws IOException {
+            super(in);
+            this.key = key;
+            synchronized (StashAssetCache.this) {
+                tmp = new File(directory, key + "." + Thread.currentThread().getId() + ".tmp");
+            }
+            out = new FileOutputStream(tmp);
+            try {
+                asset.writeHeader(out);
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                write(new byte[] {(byte) b}, 0, 1);
+            } else {
+                finish();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                write(b, off, count);
+            } else if (count < 0) {
+                finish();
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                // Closed before the end: the body is incomplete and is not kept
+                abort();
+            }
+        }
+
+        private void write(byte[] b, int off, int len) {
+            if (out == null) return;
+            written += len;
+            if (written > maxBytes / 4) {
+                // Too large to be worth a share of the cache
+                abort();
+                return;
+            }
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                Log.e(TAG, "Error writing cached asset: " + e.getMessage(), e);
+                abort();
+            }
+        }
+
+        private void finish() {
+            if (out == null) return;
+            try {
+                out.close();
+                out = null;
+                commit(key, tmp);
+            } catch (IOException e) {
+                Log.e(TAG, "Error storing cached asset: " + e.getMessage(), e);
+                abort();
+            }
+        }
+
+        private void abort() {
+            if (out == null) return;
+            closeQuietly(out);
+            out = null;
+            tmp.delete();
+        }
+    }
+}
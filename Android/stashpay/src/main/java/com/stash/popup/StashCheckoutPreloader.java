@@ -0,0 +1,290 @@
+package com.stash.popup;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+import android.widget.FrameLayout;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Loads checkout pages into hidden WebViews before the user opens them.
+ *
+ * Each preloaded WebView is attached off-screen to the host Activity's window with
+ * off-screen pre-raster enabled, so the page is laid out and painted by the time the
+ * card or popup adopts it. Entries are kept in a small LRU and expire after a fixed TTL.
+ *
+ * All methods must be called on the main thread.
+ */
+public class StashCheckoutPreloader {
+    private static final String TAG = "StashPayCard";
+    private static final int MAX_ENTRIES = 3;
+    private static final long ENTRY_TTL_MS = 5 * 60 * 1000;
+    private static final float PRELOAD_HEIGHT_RATIO = 0.68f;
+    private static StashCheckoutPreloader instance;
+
+    /**
+     * A preloaded checkout handed over to its presenter by {@link #take(Activity, String)}.
+     */
+    static class Entry {
+        // Times are recorded for the first navigation and copied into the adopting session's metrics
+        final String url;
+        final StashWebView webView;
+        final long createdAt;
+        volatile boolean pageFinished;
+        long pageStartedAt = CheckoutMetrics.NOT_REACHED;
+        long pageFinishedAt = CheckoutMetrics.NOT_REACHED;
+
+        Entry(String url, StashWebView webView) {
+            this.url = url;
+            this.webView = webView;
+            this.createdAt = SystemClock.uptimeMillis();
+        }
+
+        boolean isExpired(long now) {
+            return now - createdAt > ENTRY_TTL_MS;
+        }
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(MAX_ENTRIES, 0.75f, true);
+    private final Runnable evictExpiredRunnable = this::evictExpired;
+
+    public static synchronized StashCheckoutPreloader getInstance() {
+        if (instance == null) {
+            instance = new StashCheckoutPreloader();
+        }
+        return instance;
+    }
+
+    private StashCheckoutPreloader() {
+    }
+
+    /**
+     * Starts loading {@code url} into a hidden WebView attached to {@code activity}'s window.
+     * Does nothing if the URL is already preloaded and still fresh.
+     */
+    void preload(Activity activity, String url) {
+        preload(activity, url, false);
+    }
+
+    /**
+     * Starts loading {@code url} like {@link #preload(Activity, String)}. With {@code forLaunch}
+     * the checkout is about to be shown, so the memory budget for background preloads does not
+     * apply.
+     */
+    void preload(Activity activity, String url, boolean forLaunch) {
+        if (activity == null || url == null || url.isEmpty()) {
+            Log.e(TAG, "Invalid activity or URL in preload");
+            return;
+        }
+
+        evictExpired();
+        if (entries.get(url) != null) {
+            return;
+        }
+        if (!forLaunch) {
+            StashMemoryManager memory = StashMemoryManager.getInstance();
+            while (!entries.isEmpty() && !memory.canRetainPreload()) {
+                evictEldest();
+            }
+            if (!memory.canRetainPreload()) {
+                Log.d(TAG, "Skipping preload: over the memory budget or low on memory");
+                return;
+            }
+        }
+
+        try {
+            StashWebView webView = StashWebViewPool.getInstance().acquire(activity);
+            final Entry entry = new Entry(url, webView);
+
+            webView.setWebViewClient(new WebViewClient() {
+                @Override
+                public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                    try {
+                        // Not counted: the checkout that adopts this page has no metrics yet
+                        return StashAssetCache.getInstance().intercept(view.getContext(), request, null);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error intercepting request: " + e.getMessage(), e);
+                        return null;
+                    }
+                }
+
+                @Override
+                public void onPageStarted(WebView view, String url, Bitmap favicon) {
+                    super.onPageStarted(view, url, favicon);
+                    entry.pageFinished = false;
+                    entry.pageStartedAt = CheckoutMetrics.now();
+                    entry.webView.injectSdkIfNeeded();
+                }
+
+                @Override
+                public void onPageFinished(WebView view, String url) {
+                    super.onPageFinished(view, url);
+                    entry.pageFinished = true;
+                    entry.pageFinishedAt = CheckoutMetrics.now();
+                    entry.webView.injectSdkIfNeeded();
+                }
+            });
+            webView.setBackgroundColor(StashWebViewUtils.getThemeBackgroundColor(activity));
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                webView.getSettings().setOffscreenPreRaster(true);
+            }
+            attachOffscreen(activity, webView);
+            webView.setBaseContext(activity.getApplicationContext());
+            webView.installCheckoutBridge(url);
+            webView.loadUrl(url);
+
+            entries.put(url, entry);
+            trimToSize();
+            scheduleEviction();
+        } catch (Exception e) {
+            Log.e(TAG, "Error preloading checkout: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Removes and returns the preloaded entry for {@code url}, detached from the host window
+     * and bound to {@code activity}, or {@code null} if there is no fresh entry for the URL.
+     */
+    Entry take(Activity activity, String url) {
+        if (url == null) return null;
+        evictExpired();
+
+        Entry entry = entries.remove(url);
+        if (entry == null) return null;
+
+        try {
+            detach(entry.webView);
+            StashWebViewUtils.setRendererPriorityWaived(entry.webView, false);
+            entry.webView.setBaseContext(activity);
+            entry.webView.source = CheckoutMetrics.WebViewSource.PRELOADED;
+            return entry;
+        } catch (Exception e) {
+            Log.e(TAG, "Error adopting preloaded checkout: " + e.getMessage(), e);
+            StashWebViewPool.getInstance().release(entry.webView);
+            return null;
+        }
+    }
+
+    /**
+     * Releases every preloaded WebView.
+     */
+    void clear() {
+        for (Entry entry : entries.values()) {
+            StashWebViewPool.getInstance().release(entry.webView);
+        }
+        entries.clear();
+        mainHandler.removeCallbacks(evictExpiredRunnable);
+    }
+
+    /**
+     * Releases checkouts preloaded in {@code destroyed}'s window, which would otherwise keep
+     * the destroyed Activity's view tree alive.
+     */
+    void onHostActivityDestroyed(Activity destroyed) {
+        View decorView = destroyed.getWindow() != null ? destroyed.getWindow().peekDecorView() : null;
+        if (decorView == null) return;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.webView.getParent() == decorView) {
+                iterator.remove();
+                StashWebViewPool.getInstance().release(entry.webView);
+            }
+        }
+        scheduleEviction();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Releases the least recently used preloaded WebView.
+     */
+    void evictEldest() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        if (!iterator.hasNext()) return;
+        Entry eldest = iterator.next().getValue();
+        iterator.remove();
+        StashWebViewPool.getInstance().release(eldest.webView);
+        scheduleEviction();
+    }
+
+    /**
+     * Lets the system kill the renderer before the app while checkouts sit preloaded.
+     * Each one gets its priority back when it is taken.
+     */
+    void waiveRendererPriority() {
+        for (Entry entry : entries.values()) {
+            StashWebViewUtils.setRendererPriorityWaived(entry.webView, true);
+        }
+    }
+
+    private void attachOffscreen(Activity activity, StashWebView webView) {
+        ViewGroup decorView = (ViewGroup) activity.getWindow().getDecorView();
+        DisplayMetrics metrics = activity.getResources().getDisplayMetrics();
+
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+            metrics.widthPixels, (int)(metrics.heightPixels * PRELOAD_HEIGHT_RATIO));
+        webView.setTranslationX(metrics.widthPixels);
+        webView.setImportantForAccessibility(View.IMPORTANT_FOR_ACCESSIBILITY_NO_HIDE_DESCENDANTS);
+        decorView.addView(webView, params);
+    }
+
+    private void detach(StashWebView webView) {
+        if (webView.getParent() != null) {
+            ((ViewGroup) webView.getParent()).removeView(webView);
+        }
+        webView.setTranslationX(0);
+        webView.setImportantForAccessibility(View.IMPORTANT_FOR_ACCESSIBILITY_AUTO);
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (entries.size() > MAX_ENTRIES && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            StashWebViewPool.getInstance().release(eldest.webView);
+        }
+    }
+
+    private void evictExpired() {
+        long now = SystemClock.uptimeMillis();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.isExpired(now)) {
+                iterator.remove();
+                StashWebViewPool.getInstance().release(entry.webView);
+            }
+        }
+        scheduleEviction();
+    }
+
+    private void scheduleEviction() {
+        mainHandler.removeCallbacks(evictExpiredRunnable);
+        if (entries.isEmpty()) return;
+
+        long oldest = Long.MAX_VALUE;
+        for (Entry entry : entries.values()) {
+            oldest = Math.min(oldest, entry.createdAt);
+        }
+        long delay = Math.max(0, oldest + ENTRY_TTL_MS - SystemClock.uptimeMillis()) + 1;
+        mainHandler.postDelayed(evictExpiredRunnable, delay);
+    }
+}
@@ -0,0 +1,225 @@
+package com.stash.popup;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import androidx.webkit.WebViewAssetLoader;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Serves the checkout shell bundled in the AAR: a skeleton of the checkout page that paints
+ * while the live checkout loads.
+ *
+ * The shell is packaged at build time by the {@code packageCheckoutShell} Gradle task into
+ * gzipped assets under {@code stashpay_shell/}, with a content hash in {@code stashpay_shell/version}.
+ * {@link #wrap(Context, String, boolean)} turns a checkout URL into a shell URL on the checkout's
+ * own origin, which a {@link WebViewAssetLoader} answers from those assets without touching the
+ * network. The shell draws the skeleton and then replaces itself with the live checkout; since that
+ * navigation is same-origin, the skeleton stays on screen until the checkout draws its first frame.
+ * If the shell has not handed over by the time the reveal gate's safety timeout fires, the host
+ * loads the live checkout itself (see {@link #targetOf(String)}).
+ *
+ * The shell is only served on hosts a checkout was wrapped for, and only hands over to an HTTPS
+ * URL on its own origin, so a crafted shell URL can neither inject script into another origin nor
+ * act as an open redirect.
+ */
+public class StashCheckoutShell {
+    private static final String TAG = "StashPayCard";
+    static final String PATH_PREFIX = "/__stash_shell/";
+    private static final String ASSET_DIR = "stashpay_shell/";
+    private static final String ENTRY_FILE = "index.html";
+    private static StashCheckoutShell instance;
+
+    /** Asset loaders by checkout host. Guarded by this. */
+    private final Map<String, WebViewAssetLoader> loaders = new HashMap<>();
+    private volatile Context appContext;
+    private volatile String version;
+    private boolean versionLoaded;
+
+    public static synchronized StashCheckoutShell getInstance() {
+        if (instance == null) {
+            instance = new StashCheckoutShell();
+        }
+        return instance;
+    }
+
+    private StashCheckoutShell() {
+    }
+
+    /**
+     * Returns the URL that shows the shell and then opens {@code checkoutUrl}, or
+     * {@code checkoutUrl} itself if no shell is bundled or the URL is not HTTPS.
+     */
+    String wrap(Context context, String checkoutUrl, boolean darkTheme) {
+        try {
+            String shellVersion = loadVersion(context);
+            Uri checkout = Uri.parse(checkoutUrl);
+            if (shellVersion == null || !"https".equals(checkout.getScheme()) || checkout.getHost() == null) {
+                return checkoutUrl;
+            }
+            // Only hosts the SDK opened a checkout on are ever answered with the shell
+            loaderFor(checkout.getHost());
+            return new Uri.Builder()
+                .scheme("https")
+                .encodedAuthority(checkout.getEncodedAuthority())
+                .encodedPath(PATH_PREFIX + shellVersion + "/" + ENTRY_FILE)
+                .appendQueryParameter("theme", darkTheme ? "dark" : "light")
+                .appendQueryParameter("to", checkoutUrl)
+                .build()
+                .toString();
+        } catch (Exception e) {
+            Log.e(TAG, "Error building checkout shell URL: " + e.getMessage(), e);
+            return checkoutUrl;
+        }
+    }
+
+    /**
+     * Reads the bundled shell's version ahead of the first checkout. Any thread.
+     */
+    void warmUp(Context context) {
+        loadVersion(context);
+    }
+
+    /**
+     * Whether {@code url} is a shell page rather than the live checkout.
+     */
+    static boolean isShellUrl(String url) {
+        if (url == null) return false;
+        try {
+            String path = Uri.parse(url).getPath();
+            return path != null && path.startsWith(PATH_PREFIX);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the checkout URL that the shell page {@code url} hands over to, or null if
+     * {@code url} is not a shell page or its target is not an HTTPS URL on the shell's own origin.
+     */
+    static String targetOf(String url) {
+        if (!isShellUrl(url)) return null;
+        try {
+            Uri shell = Uri.parse(url);
+            String target = shell.getQueryParameter("to");
+            if (target == null || target.isEmpty()) return null;
+            Uri checkout = Uri.parse(target);
+            if (!"https".equals(checkout.getScheme()) || !"https".equals(shell.getScheme())
+                    || shell.getEncodedAuthority() == null
+                    || !shell.getEncodedAuthority().equalsIgnoreCase(checkout.getEncodedAuthority())) {
+                return null;
+            }
+            return target;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Answers requests for shell files from the bundled assets on hosts registered by
+     * {@link #wrap(Context, String, boolean)}; a shell path that matches no bundled file gets a 404.
+     * Returns null for every other request. Called on WebView's IO threads.
+     */
+    WebResourceResponse intercept(WebResourceRequest request) {
+        if (request == null || appContext == null || !"GET".equalsIgnoreCase(request.getMethod())) return null;
+        Uri uri = request.getUrl();
+        String path = uri != null ? uri.getPath() : null;
+        if (path == null || !path.startsWith(PATH_PREFIX) || !"https".equals(uri.getScheme())) return null;
+        WebViewAssetLoader loader;
+        synchronized (this) {
+            loader = loaders.get(uri.getHost());
+        }
+        if (loader == null) return null;
+        WebResourceResponse response = loader.shouldInterceptRequest(uri);
+        return response != null ? response : notFound();
+    }
+
+    private static WebResourceResponse notFound() {
+        return new WebResourceResponse("text/plain", "utf-8", 404, "Not Found",
+            new HashMap<String, String>(), new ByteArrayInputStream(new byte[0]));
+    }
+
+    private synchronized WebViewAssetLoader loaderFor(String host) {
+        WebViewAssetLoader loader = loaders.get(host);
+        if (loader == null) {
+            loader = new WebViewAssetLoader.Builder()
+                .setDomain(host)
+                .addPathHandler(PATH_PREFIX, this::openShellFile)
+                .build();
+            loaders.put(host, loader);
+        }
+        return loader;
+    }
+
+    /**
+     * Opens {@code path}, of the form {@code <version>/<file>}, from the bundled assets.
+     */
+    private WebResourceResponse openShellFile(String path) {
+        int slash = path.indexOf('/');
+        String shellVersion = version;
+        if (slash < 0 || shellVersion == null || !shellVersion.equals(path.substring(0, slash))) {
+            return null;
+        }
+        String file = path.substring(slash + 1);
+        if (file.isEmpty() || file.contains("..") || file.contains("/")) return null;
+        try {
+            InputStream in = new GZIPInputStream(appContext.getAssets().open(ASSET_DIR + file + ".gz"));
+            WebResourceResponse response = new WebResourceResponse(mimeTypeOf(file), "utf-8", in);
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Cache-Control", "no-store");
+            response.setResponseHeaders(headers);
+            return response;
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening checkout shell file " + file + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static String mimeTypeOf(String file) {
+        if (file.endsWith(".html")) return "text/html";
+        if (file.endsWith(".css")) return "text/css";
+        if (file.endsWith(".js")) return "text/javascript";
+        if (file.endsWith(".svg")) return "image/svg+xml";
+        if (file.endsWith(".woff2")) return "font/woff2";
+        return "application/octet-stream";
+    }
+
+    /**
+     * Reads the bundled shell's content hash, or null if the AAR carries no shell.
+     */
+    private synchronized String loadVersion(Context context) {
+        if (versionLoaded) return version;
+        versionLoaded = true;
+        if (context == null) return null;
+        appContext = context.getApplicationContext();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                appContext.getAssets().open(ASSET_DIR + "version"), "UTF-8"));
+            String line = reader.readLine();
+            version = line != null && !line.trim().isEmpty() ? line.trim() : null;
+        } catch (IOException e) {
+            Log.d(TAG, "No checkout shell bundled");
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // Nothing to do
+                }
+            }
+        }
+        return version;
+    }
+}
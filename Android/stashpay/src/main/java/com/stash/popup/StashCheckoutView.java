@@ -0,0 +1,1611 @@
+package com.stash.popup;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.content.res.Configuration;
+import android.graphics.Color;
+import android.graphics.Outline;
+import android.graphics.drawable.GradientDrawable;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+import android.view.Gravity;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewOutlineProvider;
+import android.view.ViewTreeObserver;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+import android.window.OnBackInvokedCallback;
+import android.window.OnBackInvokedDispatcher;
+import android.widget.Button;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.ProgressBar;
+
+/**
+ * The checkout card: backdrop, card container, drag handle, home button and WebView, with their
+ * enter, drag, expand and dismiss animations.
+ *
+ * The view is hosted either by {@link StashPayCardPortraitActivity} or, in
+ * {@link StashPayCard.PresentationMode#OVERLAY} mode, attached directly to the content view of the
+ * app's Activity so that the app is never paused while the checkout is shown.
+ */
+public class StashCheckoutView extends FrameLayout {
+    private static final String TAG = "StashPayCard";
+    private static final float CARD_HEIGHT_NORMAL = 0.68f;
+    private static final float CARD_HEIGHT_EXPANDED = 0.95f;
+
+    private static final String COLOR_LIGHT_BG = "#F2F2F7";
+    private static final String COLOR_DARK_STROKE = "#38383A";
+    private static final String COLOR_LIGHT_STROKE = "#E5E5EA";
+    private static final String COLOR_DRAG_HANDLE = "#D1D1D6";
+    private static final String COLOR_HOME_TEXT = "#8E8E93";
+    
+    private static final int ANIMATION_DURATION_SHORT = 200;
+    private static final int ANIMATION_DURATION_MEDIUM = 300;
+    private static final int ANIMATION_DURATION_LONG = 400;
+    private static final float CORNER_RADIUS_DP = 12f;
+    private static final float ELEVATION_DP = 24f;
+    private static final float SPRING_STIFFNESS = 400f;
+    private static final float SPRING_DAMPING = 0.85f;
+    private static final float DISMISS_SPRING_STIFFNESS = 600f;
+
+    /**
+     * Whatever owns the view: the card Activity or the app's Activity in overlay mode.
+     */
+    interface Host {
+        /**
+         * Called when the dismiss animation starts.
+         */
+        void onDismissStarted();
+
+        /**
+         * Called once the card is gone. The host removes the view and calls {@link #release()}.
+         */
+        void onDismissed();
+    }
+
+    private final Activity activity;
+    private final Host host;
+    private final StashPayCard.PresentationMode presentationMode;
+    private String url;
+    private String initialURL;
+    private final boolean usePopup;
+    private final boolean wasLandscapeBeforePortrait;
+    private CheckoutSession session;
+    private CheckoutMetrics checkoutMetrics;
+
+    private View backdropView;
+    private FrameLayout cardContainer;
+    private StashWebView webView;
+    private ProgressBar loadingIndicator;
+    private Button homeButton;
+    
+    private boolean isExpanded;
+    private boolean cardIsTablet;
+    private boolean hasPendingCardSize;
+    private int pendingCardWidth;
+    private int pendingCardHeight;
+    private SpringMotion cardSpring;
+    private boolean springFadesCard;
+    private Runnable springEndAction;
+    private final FrameJankTracker frameTracker;
+    private boolean isDismissing;
+    private boolean googlePayRedirectHandled;
+    private boolean released;
+    private boolean webViewAttachPending;
+    private boolean skeletonShowing;
+    
+    private long pageLoadStartTime;
+    private StashRevealGate revealGate;
+    private Object backInvokedCallback;
+
+    StashCheckoutView(Activity activity, Host host, StashPayCard.PresentationMode presentationMode,
+                      String url, String initialURL, boolean usePopup, boolean wasLandscapeBeforePortrait,
+                      CheckoutSession session) {
+        super(activity);
+        this.activity = activity;
+        this.host = host;
+        this.presentationMode = presentationMode;
+        this.url = url;
+        this.initialURL = initialURL;
+        this.usePopup = usePopup;
+        this.wasLandscapeBeforePortrait = wasLandscapeBeforePortrait;
+        this.session = session;
+        this.checkoutMetrics = session.metrics;
+        this.frameTracker = new FrameJankTracker(activity);
+        setBackgroundColor(Color.TRANSPARENT);
+        setFocusableInTouchMode(true);
+        checkoutMetrics.markContainerCreated();
+    }
+
+    private DeviceProfile profile() {
+        return DeviceProfile.get(activity);
+    }
+
+    /**
+     * Builds the card and plays its enter animation. The view must already be attached to its parent.
+     */
+    void show() {
+        createUI();
+        if (presentationMode == StashPayCard.PresentationMode.OVERLAY) {
+            requestFocus();
+        }
+    }
+
+    /**
+     * Switches the card to another checkout without rebuilding it. The WebView on screen navigates
+     * to {@code newUrl} and the per-checkout state is reset, so the card stays where it is. The
+     * previous checkout's metrics are delivered and its session ends without a callback, as it
+     * was replaced rather than dismissed. Returns false if the card is dismissing or released
+     * and cannot be reused.
+     */
+    boolean navigateTo(String newUrl, String newInitialURL, CheckoutSession newSession) {
+        if (released || isDismissing || newUrl == null || newUrl.isEmpty()) {
+            return false;
+        }
+        
+        try {
+            StashPayCard.getInstance().notifyCheckoutMetrics(checkoutMetrics);
+            session.moveTo(CheckoutSession.State.DISMISSED);
+            url = newUrl;
+            initialURL = newInitialURL;
+            session = newSession;
+            checkoutMetrics = newSession.metrics;
+            checkoutMetrics.markContainerCreated();
+            
+            googlePayRedirectHandled = false;
+            pageLoadStartTime = 0;
+            
+            if (webView == null) {
+                // The shell has not drawn yet; the deferred attach loads the new URL
+                return true;
+            }
+            
+            checkoutMetrics.markShellDrawn();
+            checkoutMetrics.setWebViewSource(webView.source);
+            checkoutMetrics.markWebViewReady();
+            session.moveTo(CheckoutSession.State.LOADING);
+            
+            String urlWithTheme;
+            try {
+                urlWithTheme = StashWebViewUtils.appendThemeQueryParameter(newUrl, profile().isDarkTheme);
+            } catch (Exception e) {
+                Log.e(TAG, "Error appending theme parameter: " + e.getMessage(), e);
+                urlWithTheme = newUrl;
+            }
+            webView.installCheckoutBridge(urlWithTheme);
+            webView.loadUrl(urlWithTheme);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error navigating checkout view: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Whether the exit animation is running.
+     */
+    boolean isDismissing() {
+        return isDismissing;
+    }
+
+    /**
+     * Dismisses the card with its exit animation.
+     */
+    void dismiss() {
+        dismissWithAnimation();
+    }
+
+    /**
+     * Handles the system back action. Back is ignored while a purchase is processing.
+     */
+    void handleBackPressed() {
+        if (session.isProcessing()) {
+            return;
+        }
+        dismissWithAnimation();
+    }
+
+    void onHostPause() {
+        if (webView != null) {
+            webView.onPause();
+        }
+    }
+
+    void onHostResume() {
+        if (webView != null) {
+            webView.onResume();
+        }
+    }
+
+    /**
+     * Returns the WebView to the pool, reports metrics and sends {@code onDialogDismissed} if no
+     * other result was delivered. Safe to call more than once.
+     */
+    void release() {
+        if (released) return;
+        released = true;
+        
+        try {
+            unregisterBackCallback();
+            
+            if (cardSpring != null) {
+                cardSpring.cancel();
+            }
+            frameTracker.end();
+            
+            if (revealGate != null) {
+                revealGate.cancel();
+            }
+            
+            if (webView != null) {
+                try {
+                    StashWebViewPool.getInstance().release(webView);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error releasing WebView: " + e.getMessage(), e);
+                }
+                webView = null;
+            }
+            
+            StashPayCard.getInstance().notifyCheckoutMetrics(checkoutMetrics);
+            
+            if (session.moveTo(CheckoutSession.State.DISMISSED)) {
+                try {
+                    StashPayCard.StashPayListener listener = StashPayCard.getInstance().getListener();
+                    if (listener != null) {
+                        listener.onDialogDismissed();
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Error sending dialog dismissed: " + e.getMessage(), e);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error releasing checkout view: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        registerBackCallback();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        release();
+    }
+
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        if (presentationMode == StashPayCard.PresentationMode.OVERLAY
+                && event.getKeyCode() == KeyEvent.KEYCODE_BACK) {
+            if (event.getAction() == KeyEvent.ACTION_UP && !event.isCanceled()) {
+                handleBackPressed();
+            }
+            return true;
+        }
+        return super.dispatchKeyEvent(event);
+    }
+
+    private void registerBackCallback() {
+        if (presentationMode != StashPayCard.PresentationMode.OVERLAY
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU || backInvokedCallback != null) {
+            return;
+        }
+        try {
+            OnBackInvokedCallback callback = this::handleBackPressed;
+            activity.getOnBackInvokedDispatcher().registerOnBackInvokedCallback(
+                OnBackInvokedDispatcher.PRIORITY_OVERLAY, callback);
+            backInvokedCallback = callback;
+        } catch (Exception e) {
+            Log.e(TAG, "Error registering back callback: " + e.getMessage(), e);
+        }
+    }
+
+    private void unregisterBackCallback() {
+        if (backInvokedCallback == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU) return;
+        try {
+            activity.getOnBackInvokedDispatcher().unregisterOnBackInvokedCallback(
+                (OnBackInvokedCallback) backInvokedCallback);
+        } catch (Exception e) {
+            Log.e(TAG, "Error unregistering back callback: " + e.getMessage(), e);
+        }
+        backInvokedCallback = null;
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        DeviceProfile.invalidate();
+        
+        if (!usePopup && cardContainer != null) {
+            boolean isTablet = profile().isTablet;
+            if (isTablet != cardIsTablet) {
+                rebuildCard();
+            } else if (isTablet) {
+                resizeTabletCard();
+            } else {
+                if (wasLandscapeBeforePortrait) {
+                    if (!isExpanded) {
+                        animateExpand();
+                    } else {
+                        DeviceProfile profile = profile();
+                        FrameLayout.LayoutParams params = (FrameLayout.LayoutParams) cardContainer.getLayoutParams();
+                        int expandedHeight = (int)(profile.heightPixels * CARD_HEIGHT_EXPANDED);
+                        params.height = expandedHeight;
+                        cardContainer.setLayoutParams(params);
+                    }
+                }
+            }
+        }
+    }
+    
+    private void createUI() {
+        try {
+            boolean isTablet = false;
+            try {
+                isTablet = profile().isTablet;
+            } catch (Exception e) {
+                Log.e(TAG, "Error checking if tablet in createUI: " + e.getMessage(), e);
+            }
+            
+            // Create separate backdrop view for independent fade animation
+            backdropView = new View(activity);
+            backdropView.setLayoutParams(new FrameLayout.LayoutParams(
+                FrameLayout.LayoutParams.MATCH_PARENT, 
+                FrameLayout.LayoutParams.MATCH_PARENT));
+            try {
+                if (wasLandscapeBeforePortrait && !isTablet && !usePopup
+                        && presentationMode == StashPayCard.PresentationMode.ACTIVITY) {
+                    backdropView.setBackgroundColor(Color.BLACK);
+                } else {
+                    backdropView.setBackgroundColor(Color.parseColor(StashWebViewUtils.COLOR_BACKGROUND_DIM));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error setting background color: " + e.getMessage(), e);
+                backdropView.setBackgroundColor(Color.parseColor("#80000000"));
+            }
+            addView(backdropView);
+            
+            try {
+                if (usePopup) {
+                    createPopup();
+                } else {
+                    createCard();
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error creating UI: " + e.getMessage(), e);
+                host.onDismissed();
+                return;
+            }
+            
+            if (!usePopup && cardContainer != null) {
+                // Make backdrop dismiss when tapped
+                backdropView.setOnClickListener(v -> {
+                    try {
+                        if (!isDismissing && !session.isProcessing()) {
+                            dismissWithAnimation();
+                        }
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error in backdrop click handler: " + e.getMessage(), e);
+                    }
+                });
+                cardContainer.setOnClickListener(v -> {});
+            }
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error in createUI: " + e.getMessage(), e);
+            host.onDismissed();
+        }
+    }
+    
+    private void configureCardContainer(boolean isTablet, int cardWidth, int cardHeight) {
+        DeviceProfile profile = profile();
+        cardContainer = new FrameLayout(activity);
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(cardWidth, cardHeight);
+        params.gravity = isTablet ? Gravity.CENTER : (Gravity.BOTTOM | Gravity.CENTER_HORIZONTAL);
+        cardContainer.setLayoutParams(params);
+        
+        GradientDrawable bg = new GradientDrawable();
+        bg.setColor(profile.isDarkTheme ? Color.parseColor(StashWebViewUtils.COLOR_DARK_BG) : Color.WHITE);
+        float radius = profile.px((int)CORNER_RADIUS_DP);
+        
+        if (isTablet) {
+            bg.setCornerRadius(radius);
+        } else {
+            bg.setCornerRadii(new float[]{radius, radius, radius, radius, 0, 0, 0, 0});
+        }
+        cardContainer.setBackground(bg);
+        
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            cardContainer.setElevation(profile.px((int)ELEVATION_DP));
+            cardContainer.setOutlineProvider(new ViewOutlineProvider() {
+                @Override
+                public void getOutline(View view, Outline outline) {
+                    if (isTablet) {
+                        outline.setRoundRect(0, 0, view.getWidth(), view.getHeight(), radius);
+                    } else {
+                        outline.setRoundRect(0, 0, view.getWidth(), view.getHeight() + (int)radius, radius);
+                    }
+                }
+            });
+            cardContainer.setClipToOutline(true);
+        }
+    }
+
+    private int[] calculateTabletCardSize(DeviceProfile profile) {
+        int landscapeWidth = Math.max(profile.widthPixels, profile.heightPixels);
+        int landscapeHeight = Math.min(profile.widthPixels, profile.heightPixels);
+        
+        float targetAspectRatio = 0.75f;
+        
+        float maxCardWidth = landscapeWidth * 0.8f;
+        float maxCardHeight = landscapeHeight * 0.75f;
+        
+        if (maxCardWidth <= 0 || maxCardHeight <= 0) {
+            return new int[]{600, 700};
+        }
+        
+        int cardWidth, cardHeight;
+        
+        if (maxCardWidth / targetAspectRatio <= maxCardHeight) {
+            cardWidth = (int)maxCardWidth;
+            cardHeight = (int)(cardWidth / targetAspectRatio);
+        } else {
+            cardHeight = (int)maxCardHeight;
+            cardWidth = (int)(cardHeight * targetAspectRatio);
+        }
+        
+        if (cardWidth < 400 || cardHeight < 500) {
+            return new int[]{600, 700};
+        }
+        
+        return new int[]{cardWidth, cardHeight};
+    }
+    
+    /**
+     * Rebuilds the card for a new form factor, e.g. when a foldable is opened, keeping the WebView
+     * and its page. Only the container around it is recreated.
+     */
+    private void rebuildCard() {
+        try {
+            if (webView != null && webView.getParent() != null) {
+                ((ViewGroup) webView.getParent()).removeView(webView);
+            }
+            if (loadingIndicator != null && loadingIndicator.getParent() != null) {
+                ((ViewGroup) loadingIndicator.getParent()).removeView(loadingIndicator);
+            }
+            loadingIndicator = null;
+            if (cardContainer != null) {
+                cardContainer.animate().cancel();
+            }
+            hasPendingCardSize = false;
+            removeAllViews();
+            createUI();
+            if (webView != null) {
+                checkProvider(webView.getUrl());
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error rebuilding card: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Moves the tablet card to its size for the new screen dimensions. The container and the
+     * WebView in it are kept, so rotating costs a relayout rather than a page load.
+     */
+    private void resizeTabletCard() {
+        if (cardContainer == null) return;
+        DeviceProfile profile = profile();
+        int[] cardSize = calculateTabletCardSize(profile);
+        int targetWidth = isExpanded ? cardSize[0] : (int)(cardSize[0] * 0.7f);
+        int targetHeight = isExpanded ? cardSize[1] : (int)(cardSize[1] * 0.7f);
+        
+        animateCardBounds(targetWidth, targetHeight, ANIMATION_DURATION_MEDIUM);
+    }
+    
+    private void createCard() {
+        DeviceProfile profile = profile();
+        boolean isTablet = profile.isTablet;
+        cardIsTablet = isTablet;
+        
+        int cardWidth, cardHeight;
+        
+        if (isTablet) {
+            int[] cardSize = calculateTabletCardSize(profile);
+            cardWidth = cardSize[0];
+            cardHeight = cardSize[1];
+            isExpanded = true;
+        } else {
+            float effectiveHeightRatio;
+            if (wasLandscapeBeforePortrait) {
+                effectiveHeightRatio = CARD_HEIGHT_EXPANDED;
+                isExpanded = true;
+            } else {
+                effectiveHeightRatio = CARD_HEIGHT_NORMAL;
+                isExpanded = false;
+            }
+            cardHeight = (int)(profile.heightPixels * effectiveHeightRatio);
+            cardWidth = FrameLayout.LayoutParams.MATCH_PARENT;
+        }
+        
+        configureCardContainer(isTablet, cardWidth, cardHeight);
+        
+        addDragHandle();
+        addHomeButton();
+        addView(cardContainer);
+        
+        if (isTablet) {
+            animateFadeIn();
+        } else {
+            animateSlideUp();
+        }
+        scheduleWebView();
+    }
+    
+    private void createPopup() {
+        DeviceProfile profile = profile();
+        int size = (int)(Math.min(profile.widthPixels, profile.heightPixels) * 0.75f);
+        
+        configureCardContainer(true, size, size);
+        
+        addView(cardContainer);
+        animateFadeIn();
+        scheduleWebView();
+    }
+    
+    /**
+     * Adds the WebView once the card shell has drawn its first frame, so the backdrop and the enter
+     * animation are not held up by WebView creation and the first loadUrl. A WebView that already
+     * exists (the card is being rebuilt) is reattached immediately.
+     */
+    private void scheduleWebView() {
+        if (webView != null) {
+            addWebView();
+            return;
+        }
+        showLoading();
+        if (webViewAttachPending) return;
+        webViewAttachPending = true;
+        
+        getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                try {
+                    getViewTreeObserver().removeOnPreDrawListener(this);
+                    checkoutMetrics.markShellDrawn();
+                    // Runs after this frame has been drawn
+                    post(StashCheckoutView.this::attachDeferredWebView);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error scheduling WebView: " + e.getMessage(), e);
+                }
+                return true;
+            }
+        });
+    }
+    
+    private void attachDeferredWebView() {
+        if (!webViewAttachPending) return;
+        webViewAttachPending = false;
+        if (released || isDismissing || webView != null) return;
+        addWebView();
+    }
+    
+    private void addDragHandle() {
+        DeviceProfile profile = profile();
+        LinearLayout dragArea = new LinearLayout(activity);
+        dragArea.setOrientation(LinearLayout.VERTICAL);
+        dragArea.setGravity(Gravity.CENTER_HORIZONTAL);
+        dragArea.setPadding(profile.px(20), profile.px(16), profile.px(20), profile.px(16));
+        
+        View handle = new View(activity);
+        GradientDrawable handleBg = new GradientDrawable();
+        handleBg.setColor(Color.parseColor(COLOR_DRAG_HANDLE));
+        handleBg.setCornerRadius(profile.px(2));
+        handle.setBackground(handleBg);
+        handle.setLayoutParams(new LinearLayout.LayoutParams(profile.px(36), profile.px(5)));
+        dragArea.addView(handle);
+        
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+            profile.px(120), FrameLayout.LayoutParams.WRAP_CONTENT);
+        params.gravity = Gravity.TOP | Gravity.CENTER_HORIZONTAL;
+        dragArea.setLayoutParams(params);
+        
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            dragArea.setElevation(profile.px(8));
+        }
+        
+        addDragTouchHandling(dragArea);
+        cardContainer.addView(dragArea);
+    }
+    
+    private class DragHandleTouchListener implements View.OnTouchListener {
+        private float initialY;
+        private float initialTranslationY;
+        private boolean isDragging;
+        private VelocityTracker velocityTracker;
+        
+        @Override
+        public boolean onTouch(View v, MotionEvent event) {
+            if (cardContainer == null) return false;
+            
+            if (session.isProcessing()) {
+                return false;
+            }
+            
+            DeviceProfile profile = profile();
+            boolean isTablet = profile.isTablet;
+            boolean canExpand = !isTablet && !isExpanded && !wasLandscapeBeforePortrait;
+            
+            if (isDismissing) {
+                // Already on its way out; swallow the gesture instead of catching the card
+                return true;
+            }
+            
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN:
+                    // Catch the card where it is, even mid-animation
+                    frameTracker.end();
+                    cancelCardMotion();
+                    initialY = event.getRawY();
+                    initialTranslationY = cardContainer.getTranslationY();
+                    isDragging = false;
+                    if (velocityTracker == null) {
+                        velocityTracker = VelocityTracker.obtain();
+                    } else {
+                        velocityTracker.clear();
+                    }
+                    trackVelocity(event);
+                    return true;
+                
+                case MotionEvent.ACTION_MOVE:
+                    trackVelocity(event);
+                    float deltaY = event.getRawY() - initialY;
+                    
+                    if (isDragging || Math.abs(deltaY) > profile.dragSlopPx) {
+                        frameTracker.begin(AnimationFrameStats.Phase.DRAG);
+                        isDragging = true;
+                        
+                        float translation = initialTranslationY + deltaY;
+                        if (translation >= 0) {
+                            applyDragTranslation(translation);
+                            cardContainer.setScaleX(1.0f);
+                            cardContainer.setScaleY(1.0f);
+                        } else {
+                            applyDragTranslation(0);
+                            if (canExpand) {
+                                // Drag up to expand - disabled for tablets
+                                float dragProgress = Math.min(-translation / profile.expandHintRangePx, 1.0f);
+                                cardContainer.setScaleX(1.0f + (dragProgress * 0.02f));
+                                cardContainer.setScaleY(1.0f + (dragProgress * 0.02f));
+                            }
+                        }
+                    }
+                    return true;
+                
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_CANCEL:
+                    float velocityY = 0f;
+                    if (velocityTracker != null) {
+                        trackVelocity(event);
+                        velocityTracker.computeCurrentVelocity(1000);
+                        velocityY = velocityTracker.getYVelocity();
+                        velocityTracker.recycle();
+                        velocityTracker = null;
+                    }
+                    if (isDragging) {
+                        float pull = initialTranslationY + (event.getRawY() - initialY);
+                        boolean flungDown = velocityY > profile.flingVelocityPx;
+                        boolean flungUp = velocityY < -profile.flingVelocityPx;
+                        
+                        if (flungDown || (pull > profile.dismissDistancePx && !flungUp)) {
+                            if (isTablet) {
+                                // For tablets, use fade dismiss animation
+                                animateTabletDismiss();
+                            } else {
+                                animateDismiss(Math.max(velocityY, 0f));
+                            }
+                        } else if (canExpand && (flungUp || -pull > profile.expandDistancePx)) {
+                            // Drag up to expand - only for phones, not tablets
+                            springExpand(velocityY);
+                        } else {
+                            springSnapBack(velocityY);
+                        }
+                    }
+                    return true;
+            }
+            return false;
+        }
+        
+        /**
+         * Feeds the tracker screen coordinates; the handle moves with the card, so its local
+         * coordinates would understate the finger's speed.
+         */
+        private void trackVelocity(MotionEvent event) {
+            if (velocityTracker == null) return;
+            float offsetX = event.getRawX() - event.getX();
+            float offsetY = event.getRawY() - event.getY();
+            event.offsetLocation(offsetX, offsetY);
+            velocityTracker.addMovement(event);
+            event.offsetLocation(-offsetX, -offsetY);
+        }
+    }
+
+    private void addDragTouchHandling(View dragArea) {
+        dragArea.setOnTouchListener(new DragHandleTouchListener());
+    }
+    
+    /**
+     * Moves the card by a drag or dismiss offset, dimming it as it leaves the screen.
+     */
+    private void applyDragTranslation(float translation) {
+        cardContainer.setTranslationY(translation);
+        float progress = Math.min(Math.max(translation, 0f) / profile().heightPixels, 1.0f);
+        cardContainer.setAlpha(1.0f - (progress * 0.5f));
+    }
+    
+    /**
+     * Stops every animation of the card where it is and applies any deferred resize.
+     */
+    private void cancelCardMotion() {
+        if (cardSpring != null) {
+            cardSpring.cancel();
+        }
+        springEndAction = null;
+        cardContainer.animate().cancel();
+        commitPendingCardSize();
+    }
+    
+    /**
+     * Springs the card's translation to {@code target}, starting from where it is with the given
+     * velocity in px/s. Scale is eased back to 1 alongside. With {@code fadesCard} the card's
+     * alpha follows its offset as it does while dragging.
+     */
+    private void springCardTo(float target, float velocity, boolean dismissing, boolean fadesCard,
+                              Runnable endAction) {
+        if (cardSpring == null) {
+            cardSpring = new SpringMotion(SPRING_STIFFNESS, SPRING_DAMPING, cardSpringListener);
+        }
+        if (dismissing) {
+            cardSpring.setSpring(DISMISS_SPRING_STIFFNESS, 1f);
+        } else {
+            cardSpring.setSpring(SPRING_STIFFNESS, SPRING_DAMPING);
+        }
+        springFadesCard = fadesCard;
+        springEndAction = endAction;
+        cardContainer.animate()
+            .scaleX(1f)
+            .scaleY(1f)
+            .setDuration(ANIMATION_DURATION_MEDIUM)
+            .setInterpolator(new android.view.animation.DecelerateInterpolator())
+            .start();
+        cardSpring.start(cardContainer.getTranslationY(), velocity, target);
+    }
+    
+    private final SpringMotion.Listener cardSpringListener = new SpringMotion.Listener() {
+        @Override
+        public void onSpringUpdate(SpringMotion spring, float value) {
+            if (cardContainer == null) return;
+            if (springFadesCard) {
+                applyDragTranslation(value);
+            } else {
+                cardContainer.setTranslationY(value);
+            }
+        }
+        
+        @Override
+        public void onSpringAtRest(SpringMotion spring) {
+            frameTracker.end();
+            Runnable endAction = springEndAction;
+            springEndAction = null;
+            if (endAction != null) {
+                endAction.run();
+            }
+        }
+    };
+    
+    private void springSnapBack(float velocity) {
+        FrameLayout.LayoutParams params = (FrameLayout.LayoutParams)cardContainer.getLayoutParams();
+        DeviceProfile profile = profile();
+        boolean keepsSize = profile.isTablet
+            || params.height == (int)(profile.heightPixels * (isExpanded ? CARD_HEIGHT_EXPANDED : CARD_HEIGHT_NORMAL));
+        if (!keepsSize || (wasLandscapeBeforePortrait && !isExpanded)) {
+            animateSnapBack();
+            return;
+        }
+        springCardTo(0f, velocity, false, true, null);
+    }
+    
+    private void springExpand(float velocity) {
+        frameTracker.begin(AnimationFrameStats.Phase.EXPAND);
+        cancelCardMotion();
+        int expandedHeight = (int)(profile().heightPixels * CARD_HEIGHT_EXPANDED);
+        // Resize once; setCardSize offsets the translation so the spring carries the card up
+        setCardSize(FrameLayout.LayoutParams.MATCH_PARENT, expandedHeight);
+        cardContainer.setAlpha(1f);
+        springCardTo(0f, velocity, false, false, null);
+        isExpanded = true;
+    }
+    
+    private void animateDismiss(float velocity) {
+        if (cardContainer == null) return;
+        if (session.isProcessing() || isDismissing) return;
+        
+        isDismissing = true;
+        try {
+            host.onDismissStarted();
+        } catch (Exception e) {
+            Log.e(TAG, "Error notifying host of dismiss: " + e.getMessage(), e);
+        }
+        frameTracker.begin(AnimationFrameStats.Phase.DISMISS);
+        int height = cardContainer.getHeight();
+        if (height == 0) {
+            height = (int)(profile().heightPixels * CARD_HEIGHT_NORMAL);
+        }
+        
+        // Fade out the backdrop independently
+        if (backdropView != null) {
+            backdropView.animate()
+                .alpha(0f)
+                .setDuration(250)
+                .setInterpolator(new android.view.animation.AccelerateInterpolator())
+                .start();
+        }
+        
+        springCardTo(height, velocity, true, true, this::finishWithNoAnimation);
+    }
+    
+    private void animateTabletDismiss() {
+        if (cardContainer == null) return;
+        if (session.isProcessing()) return;
+        
+        isDismissing = true;
+        frameTracker.begin(AnimationFrameStats.Phase.DISMISS);
+        cancelCardMotion();
+        
+        // Fade out the backdrop
+        if (backdropView != null) {
+            backdropView.animate()
+                .alpha(0f)
+                .setDuration(200)
+                .setInterpolator(new android.view.animation.AccelerateInterpolator())
+                .start();
+        }
+        
+        // Scale down and fade out the card for a seamless tablet dismiss
+        cardContainer.animate()
+            .alpha(0f)
+            .scaleX(0.9f)
+            .scaleY(0.9f)
+            .setDuration(200)
+            .setInterpolator(new android.view.animation.AccelerateInterpolator())
+            .withEndAction(this::finishWithNoAnimation)
+            .start();
+    }
+    
+    /**
+     * Animates the card to the given size while resetting any drag transforms, resizing the
+     * container exactly once so the page sees a single viewport change.
+     *
+     * A growing card is resized up front and starts offset by a transform that makes it look
+     * unchanged: a translation for the bottom-anchored phone card, a scale for the centered tablet
+     * card. The transform then animates back to identity on the RenderThread. A shrinking card
+     * animates to its target with transforms only and is resized when the animation ends.
+     */
+    private void animateCardBounds(int targetWidth, int targetHeight, int duration) {
+        cancelCardMotion();
+        
+        FrameLayout.LayoutParams params = (FrameLayout.LayoutParams)cardContainer.getLayoutParams();
+        int currentWidth = cardContainer.getWidth();
+        int currentHeight = cardContainer.getHeight();
+        boolean sizeChanged = params.width != targetWidth || params.height != targetHeight;
+        
+        android.view.ViewPropertyAnimator animator = cardContainer.animate()
+            .alpha(1f)
+            .setDuration(duration)
+            .setInterpolator(new SpringInterpolator());
+        
+        if (!sizeChanged || currentWidth == 0 || currentHeight == 0) {
+            if (sizeChanged) {
+                params.width = targetWidth;
+                params.height = targetHeight;
+                cardContainer.setLayoutParams(params);
+            }
+            animator.translationY(0).scaleX(1f).scaleY(1f).withEndAction(this::finishCardAnimation).start();
+            return;
+        }
+        
+        int resolvedWidth = targetWidth == FrameLayout.LayoutParams.MATCH_PARENT ? currentWidth : targetWidth;
+        if (resolvedWidth >= currentWidth && targetHeight >= currentHeight) {
+            setCardSize(targetWidth, targetHeight);
+            animator.translationY(0).scaleX(1f).scaleY(1f).withEndAction(this::finishCardAnimation).start();
+        } else {
+            pendingCardWidth = targetWidth;
+            pendingCardHeight = targetHeight;
+            hasPendingCardSize = true;
+            if (isBottomAnchored(params)) {
+                animator.translationY(currentHeight - targetHeight).scaleX(1f).scaleY(1f);
+            } else {
+                animator.translationY(0)
+                    .scaleX(resolvedWidth / (float) currentWidth)
+                    .scaleY(targetHeight / (float) currentHeight);
+            }
+            animator.withEndAction(this::finishCardAnimation).start();
+        }
+    }
+    
+    private void finishCardAnimation() {
+        commitPendingCardSize();
+        frameTracker.end();
+    }
+    
+    /**
+     * Applies a resize deferred by {@link #animateCardBounds}, e.g. when a drag interrupts the
+     * animation. The card's transforms are compensated so it does not visibly jump.
+     */
+    private void commitPendingCardSize() {
+        if (!hasPendingCardSize || cardContainer == null) return;
+        hasPendingCardSize = false;
+        setCardSize(pendingCardWidth, pendingCardHeight);
+    }
+    
+    /**
+     * Resizes the card and offsets its transforms by the size change, so the first frame after
+     * the resize looks the same as the last frame before it.
+     */
+    private void setCardSize(int width, int height) {
+        FrameLayout.LayoutParams params = (FrameLayout.LayoutParams)cardContainer.getLayoutParams();
+        int oldWidth = cardContainer.getWidth();
+        int oldHeight = cardContainer.getHeight();
+        params.width = width;
+        params.height = height;
+        cardContainer.setLayoutParams(params);
+        if (oldWidth == 0 || oldHeight == 0) return;
+        
+        if (isBottomAnchored(params)) {
+            cardContainer.setTranslationY(cardContainer.getTranslationY() + (height - oldHeight));
+        } else {
+            int newWidth = width == FrameLayout.LayoutParams.MATCH_PARENT ? oldWidth : width;
+            cardContainer.setScaleX(snapToIdentity(cardContainer.getScaleX() * oldWidth / newWidth));
+            cardContainer.setScaleY(snapToIdentity(cardContainer.getScaleY() * oldHeight / height));
+        }
+    }
+    
+    private static boolean isBottomAnchored(FrameLayout.LayoutParams params) {
+        return (params.gravity & Gravity.VERTICAL_GRAVITY_MASK) == Gravity.BOTTOM;
+    }
+    
+    private static float snapToIdentity(float scale) {
+        return Math.abs(scale - 1f) < 0.001f ? 1f : scale;
+    }
+
+    private void animateExpand() {
+        if (cardContainer == null) return;
+        DeviceProfile profile = profile();
+        boolean isTablet = profile.isTablet;
+        
+        FrameLayout.LayoutParams params = (FrameLayout.LayoutParams)cardContainer.getLayoutParams();
+        
+        int expandedHeight = (int)(profile.heightPixels * CARD_HEIGHT_EXPANDED);
+        int expandedWidth;
+        
+        if (isTablet) {
+            int[] cardSize = calculateTabletCardSize(profile);
+            expandedWidth = cardSize[0];
+            expandedHeight = cardSize[1];
+        } else {
+            expandedWidth = params.width;
+        }
+        
+        frameTracker.begin(AnimationFrameStats.Phase.EXPAND);
+        animateCardBounds(expandedWidth, expandedHeight, isTablet ? 350 : 450);
+        
+        isExpanded = true;
+    }
+    
+    private void animateCollapse() {
+        if (cardContainer == null || !isExpanded) return;
+        DeviceProfile profile = profile();
+        boolean isTablet = profile.isTablet;
+        
+        FrameLayout.LayoutParams params = (FrameLayout.LayoutParams)cardContainer.getLayoutParams();
+        
+        int collapsedHeight;
+        int collapsedWidth;
+        
+        if (isTablet) {
+            int[] defaultCardSize = calculateTabletCardSize(profile);
+            collapsedWidth = (int)(defaultCardSize[0] * 0.7f);
+            collapsedHeight = (int)(defaultCardSize[1] * 0.7f);
+        } else {
+            collapsedHeight = (int)(profile.heightPixels * CARD_HEIGHT_NORMAL);
+            collapsedWidth = params.width;
+        }
+        
+        frameTracker.begin(AnimationFrameStats.Phase.COLLAPSE);
+        animateCardBounds(collapsedWidth, collapsedHeight, isTablet ? 320 : 380);
+        
+        isExpanded = false;
+    }
+    
+    private void animateSnapBack() {
+        if (cardContainer == null) return;
+        DeviceProfile profile = profile();
+        boolean isTablet = profile.isTablet;
+        
+        FrameLayout.LayoutParams params = (FrameLayout.LayoutParams)cardContainer.getLayoutParams();
+        int targetHeight;
+        if (isTablet) {
+            // Tablet cards keep their size; only the drag transforms are undone
+            targetHeight = hasPendingCardSize ? pendingCardHeight : params.height;
+        } else if (wasLandscapeBeforePortrait) {
+            targetHeight = (int)(profile.heightPixels * CARD_HEIGHT_EXPANDED);
+            isExpanded = true;
+        } else if (isExpanded) {
+            targetHeight = (int)(profile.heightPixels * CARD_HEIGHT_EXPANDED);
+        } else {
+            targetHeight = (int)(profile.heightPixels * CARD_HEIGHT_NORMAL);
+        }
+        
+        animateCardBounds(hasPendingCardSize ? pendingCardWidth : params.width, targetHeight, 450);
+    }
+
+    private void addWebView() {
+        if (url == null || url.isEmpty() || cardContainer == null) {
+            Log.e(TAG, "Invalid parameters in addWebView");
+            return;
+        }
+        
+        if (webView != null) {
+            // Card rebuilt around a live page: reattach the WebView as it is
+            cardContainer.addView(webView, 0, new FrameLayout.LayoutParams(
+                FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT));
+            if (revealGate != null && !revealGate.isRevealed()) {
+                showLoading();
+            }
+            return;
+        }
+        
+        try {
+            StashCheckoutPreloader.Entry preloaded = StashCheckoutPreloader.getInstance().take(activity, url);
+            webView = preloaded != null ? preloaded.webView : StashWebViewPool.getInstance().acquire(activity);
+            revealGate = new StashRevealGate(this::onRevealed);
+        
+        webView.setWebViewClient(new WebViewClient() {
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                try {
+                    WebResourceResponse shell = StashCheckoutShell.getInstance().intercept(request);
+                    if (shell != null) return shell;
+                    return StashAssetCache.getInstance().intercept(view.getContext(), request, checkoutMetrics);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error intercepting request: " + e.getMessage(), e);
+                    return null;
+                }
+            }
+            
+            @Override
+            public void onPageStarted(WebView view, String url, android.graphics.Bitmap favicon) {
+                try {
+                    super.onPageStarted(view, url, favicon);
+                    if (StashCheckoutShell.isShellUrl(url)) {
+                        // Only the live checkout's navigation is measured and revealed; the gate is
+                        // armed so a shell that never hands over still times out to the live checkout
+                        revealGate.arm();
+                        return;
+                    }
+                    pageLoadStartTime = CheckoutMetrics.now();
+                    checkoutMetrics.markNavigationStart(pageLoadStartTime);
+                    session.moveTo(CheckoutSession.State.LOADING);
+                    if (!skeletonShowing) {
+                        // Otherwise the skeleton stays painted until the checkout draws
+                        showLoading();
+                    }
+                    revealGate.arm();
+                    injectSDK();
+                    checkProvider(url);
+                    checkGooglePayRedirect(url);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error in onPageStarted: " + e.getMessage(), e);
+                }
+            }
+            
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                try {
+                    super.onPageFinished(view, url);
+                    if (StashCheckoutShell.isShellUrl(url)) return;
+                    checkoutMetrics.markPageFinished(CheckoutMetrics.now());
+                    reportPageLoaded();
+                    revealGate.onContentVisible(view, "page finished");
+                    injectSDK();
+                    checkProvider(url);
+                    checkGooglePayRedirect(url);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error in onPageFinished: " + e.getMessage(), e);
+                }
+            }
+            
+            @Override
+            public void onPageCommitVisible(WebView view, String url) {
+                try {
+                    super.onPageCommitVisible(view, url);
+                    if (StashCheckoutShell.isShellUrl(url)) {
+                        if (!StashWebViewUtils.postVisualStateCallback(view, StashCheckoutView.this::onSkeletonShown)) {
+                            onSkeletonShown();
+                        }
+                        return;
+                    }
+                    checkoutMetrics.markCommitVisible();
+                    StashWebViewUtils.postVisualStateCallback(view, checkoutMetrics::markFirstVisualFrame);
+                    revealGate.onContentVisible(view, "commit visible");
+                } catch (Exception e) {
+                    Log.e(TAG, "Error in onPageCommitVisible: " + e.getMessage(), e);
+                }
+            }
+            
+            @Override
+            public void onReceivedError(WebView view, android.webkit.WebResourceRequest request, 
+                                        android.webkit.WebResourceError error) {
+                try {
+                    super.onReceivedError(view, request, error);
+                    if (error != null) {
+                        Log.e(TAG, "WebView error: " + error.getDescription());
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Error in onReceivedError: " + e.getMessage(), e);
+                }
+            }
+        });
+        
+            try {
+                checkoutMetrics.setWebViewSource(webView.source);
+                webView.bridge.setListener(new JSInterface());
+                webView.setBackgroundColor(profile().isDarkTheme ? Color.parseColor(StashWebViewUtils.COLOR_DARK_BG) : Color.WHITE);
+                
+                FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+                    FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT);
+                webView.setLayoutParams(params);
+                // Below the drag handle and home button, which were added with the shell
+                cardContainer.addView(webView, 0);
+                checkoutMetrics.markWebViewReady();
+                if (preloaded != null) {
+                    // The page was loaded ahead of time; show it as-is on the first frame
+                    session.moveTo(CheckoutSession.State.LOADING);
+                    checkoutMetrics.markNavigationStart(preloaded.pageStartedAt);
+                    checkoutMetrics.markPageFinished(preloaded.pageFinishedAt);
+                    if (!preloaded.pageFinished) {
+                        // onPageFinished still reports the load, measured from its real start
+                        if (preloaded.pageStartedAt > 0) {
+                            pageLoadStartTime = preloaded.pageStartedAt;
+                        }
+                        showLoading();
+                        revealGate.arm();
+                    } else {
+                        revealGate.revealNow();
+                    }
+                    checkProvider(webView.getUrl());
+                    return;
+                }
+                String urlWithTheme;
+                try {
+                    urlWithTheme = StashWebViewUtils.appendThemeQueryParameter(url, profile().isDarkTheme);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error appending theme parameter: " + e.getMessage(), e);
+                    urlWithTheme = url;
+                }
+                webView.installCheckoutBridge(urlWithTheme);
+                webView.loadUrl(StashCheckoutShell.getInstance().wrap(activity, urlWithTheme, profile().isDarkTheme));
+            } catch (Exception e) {
+                Log.e(TAG, "Error setting up WebView: " + e.getMessage(), e);
+                host.onDismissed();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error creating WebView: " + e.getMessage(), e);
+            host.onDismissed();
+        }
+    }
+    
+    private void addHomeButton() {
+        DeviceProfile profile = profile();
+        homeButton = new Button(activity);
+        homeButton.setText("⌂");
+        homeButton.setTextSize(18);
+        homeButton.setTextColor(Color.parseColor(COLOR_HOME_TEXT));
+        homeButton.setGravity(Gravity.CENTER);
+        homeButton.setPadding(0, 0, 0, 0);
+        
+        GradientDrawable bg = new GradientDrawable();
+        bg.setColor(profile.isDarkTheme ? Color.parseColor("#2C2C2E") : Color.parseColor(COLOR_LIGHT_BG));
+        bg.setCornerRadius(profile.px(20));
+        bg.setStroke(profile.px(1), profile.isDarkTheme ? Color.parseColor(COLOR_DARK_STROKE) : Color.parseColor(COLOR_LIGHT_STROKE));
+        homeButton.setBackground(bg);
+        
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            homeButton.setElevation(profile.px(6));
+        }
+        
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(profile.px(36), profile.px(36));
+        params.gravity = Gravity.TOP | Gravity.START;
+        params.setMargins(profile.px(12), profile.px(12), 0, 0);
+        homeButton.setLayoutParams(params);
+        homeButton.setVisibility(View.GONE);
+        homeButton.setOnClickListener(v -> {
+            if (initialURL != null && webView != null) {
+                String urlWithTheme = StashWebViewUtils.appendThemeQueryParameter(initialURL, profile().isDarkTheme);
+                webView.loadUrl(urlWithTheme);
+            }
+        });
+        
+        cardContainer.addView(homeButton);
+    }
+    
+    private void injectSDK() {
+        if (webView != null) {
+            webView.injectSdkIfNeeded();
+        }
+    }
+    
+    private void checkProvider(String url) {
+        if (homeButton == null || url == null) return;
+        String lower = url.toLowerCase();
+        boolean show = lower.contains("klarna") || lower.contains("paypal") || lower.contains("stripe");
+        activity.runOnUiThread(() -> homeButton.setVisibility(show ? View.VISIBLE : View.GONE));
+    }
+    
+    private void checkGooglePayRedirect(String url) {
+        if (url == null || googlePayRedirectHandled || initialURL == null || initialURL.isEmpty()) {
+            return;
+        }
+        
+        String lower = url.toLowerCase();
+        if (lower.contains("pay.google.com")) {
+            googlePayRedirectHandled = true;
+            openGooglePayInBrowser(initialURL);
+        }
+    }
+    
+    private void openGooglePayInBrowser(String url) {
+        try {
+            String urlWithParam = url;
+            if (url != null && !url.isEmpty()) {
+                Uri uri = Uri.parse(url);
+                String existingQuery = uri.getQuery();
+                if (existingQuery != null && !existingQuery.isEmpty()) {
+                    urlWithParam = url + "&dpm=gpay";
+                } else {
+                    urlWithParam = url + "?dpm=gpay";
+                }
+            }
+            
+            openWithChromeCustomTabs(urlWithParam, activity);
+            dismissWithAnimation();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to open Google Pay URL: " + e.getMessage());
+        }
+    }
+    
+    private void openWithChromeCustomTabs(String url, Activity activity) {
+        try {
+            if (StashCustomTabs.isAvailable()) {
+                Log.d(TAG, "Opening Google Pay URL with Chrome Custom Tabs");
+                StashCustomTabs.getInstance().launch(activity, url);
+            } else {
+                Log.w(TAG, "Chrome Custom Tabs not available. Falling back to default browser.");
+                openInSystemBrowser(url);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to open browser: " + e.getMessage());
+            try {
+                openInSystemBrowser(url);
+            } catch (Exception fallbackException) {
+                Log.e(TAG, "Failed to open default browser: " + fallbackException.getMessage());
+            }
+        }
+    }
+    
+    private void openInSystemBrowser(String url) {
+        try {
+            Intent browserIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
+            browserIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            activity.startActivity(browserIntent);
+            dismissWithAnimation();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to open URL in system browser: " + e.getMessage());
+        }
+    }
+    
+    private void showLoading() {
+        activity.runOnUiThread(() -> {
+                if (loadingIndicator != null && loadingIndicator.getParent() != null) {
+                    ((ViewGroup)loadingIndicator.getParent()).removeView(loadingIndicator);
+                }
+                
+                if (cardContainer != null) {
+                loadingIndicator = StashWebViewUtils.createAndShowLoading(activity.getApplicationContext(), cardContainer);
+                        if (loadingIndicator != null) {
+                            loadingIndicator.setVisibility(View.VISIBLE);
+                            loadingIndicator.requestLayout();
+                        }
+            }
+        });
+    }
+    
+    /**
+     * The bundled skeleton is on screen and replaces the spinner until the checkout is revealed.
+     */
+    private void onSkeletonShown() {
+        if (released || revealGate == null || revealGate.isRevealed()) return;
+        skeletonShowing = true;
+        StashWebViewUtils.hideLoading(loadingIndicator);
+        loadingIndicator = null;
+        checkoutMetrics.markSkeletonShown();
+    }
+    
+    /**
+     * Called by the reveal gate. If the shell is still on screen, the gate timed out waiting for
+     * its handover, so the live checkout is loaded directly and revealed when it draws.
+     */
+    private void onRevealed() {
+        String target = webView != null ? StashCheckoutShell.targetOf(webView.getUrl()) : null;
+        if (target != null && !released) {
+            Log.w(TAG, "Checkout shell did not hand over, loading checkout directly");
+            webView.loadUrl(target);
+            return;
+        }
+        hideLoading();
+    }
+    
+    private void hideLoading() {
+        activity.runOnUiThread(() -> {
+            skeletonShowing = false;
+            StashWebViewUtils.hideLoading(loadingIndicator);
+                        loadingIndicator = null;
+            session.moveTo(CheckoutSession.State.INTERACTIVE);
+            checkoutMetrics.markContentShown();
+        });
+    }
+    
+    private void reportPageLoaded() {
+        if (pageLoadStartTime <= 0) return;
+        long loadTimeMs = CheckoutMetrics.now() - pageLoadStartTime;
+        pageLoadStartTime = 0;
+        try {
+            StashPayCard.StashPayListener listener = StashPayCard.getInstance().getListener();
+            if (listener != null) {
+                listener.onPageLoaded(loadTimeMs);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error sending page loaded message: " + e.getMessage(), e);
+        }
+    }
+    
+    private void animateSlideUp() {
+        DeviceProfile profile = profile();
+        cardContainer.setTranslationY(profile.heightPixels);
+        
+        cardContainer.post(() -> {
+            frameTracker.begin(AnimationFrameStats.Phase.OPEN);
+            cardContainer.animate()
+                .translationY(0)
+                .setDuration(300)
+                .setInterpolator(new android.view.animation.AccelerateDecelerateInterpolator())
+                .withEndAction(this::onEntryAnimationFinished)
+                .start();
+        });
+    }
+    
+    private void animateFadeIn() {
+        cardContainer.setAlpha(0f);
+        cardContainer.setScaleX(0.9f);
+        cardContainer.setScaleY(0.9f);
+        frameTracker.begin(AnimationFrameStats.Phase.OPEN);
+        cardContainer.animate()
+            .alpha(1f)
+            .scaleX(1f)
+            .scaleY(1f)
+            .setDuration(200)
+            .setInterpolator(new android.view.animation.AccelerateDecelerateInterpolator())
+            .withEndAction(this::onEntryAnimationFinished)
+            .start();
+    }
+    
+    private void onEntryAnimationFinished() {
+        checkoutMetrics.markEntryAnimationFinished();
+        frameTracker.end(AnimationFrameStats.Phase.OPEN);
+    }
+    
+    private void dismissWithAnimation() {
+        if (isDismissing) return;
+        isDismissing = true;
+        
+        try {
+            try {
+                host.onDismissStarted();
+            } catch (Exception e) {
+                Log.e(TAG, "Error notifying host of dismiss: " + e.getMessage(), e);
+            }
+            
+            if (cardContainer == null) {
+                finishWithNoAnimation();
+                return;
+            }
+            frameTracker.begin(AnimationFrameStats.Phase.DISMISS);
+            cancelCardMotion();
+            
+            // Fade out the backdrop independently
+            if (backdropView != null) {
+                backdropView.animate()
+                    .alpha(0f)
+                    .setDuration(350)
+                    .setInterpolator(new android.view.animation.AccelerateInterpolator())
+                    .start();
+            }
+            
+            boolean isTablet = profile().isTablet;
+            
+            if (usePopup || isTablet) {
+                // Use fade animation for popups and tablets
+                try {
+                    cardContainer.animate()
+                        .alpha(0f)
+                        .scaleX(0.9f)
+                        .scaleY(0.9f)
+                        .setDuration(200)
+                        .setInterpolator(new android.view.animation.AccelerateInterpolator())
+                        .withEndAction(() -> {
+                            try {
+                                finishWithNoAnimation();
+                            } catch (Exception e) {
+                                Log.e(TAG, "Error in animation end action: " + e.getMessage(), e);
+                                host.onDismissed();
+                            }
+                        })
+                        .start();
+                } catch (Exception e) {
+                    Log.e(TAG, "Error animating popup dismissal: " + e.getMessage(), e);
+                    finishWithNoAnimation();
+                }
+            } else {
+                // Use slide animation for phones
+                try {
+                    cardContainer.animate()
+                        .translationY(cardContainer.getHeight())
+                        .setDuration(300)
+                        .setInterpolator(new android.view.animation.AccelerateInterpolator())
+                        .withEndAction(() -> {
+                            try {
+                                finishWithNoAnimation();
+                            } catch (Exception e) {
+                                Log.e(TAG, "Error in animation end action: " + e.getMessage(), e);
+                                host.onDismissed();
+                            }
+                        })
+                        .start();
+                } catch (Exception e) {
+                    Log.e(TAG, "Error animating card dismissal: " + e.getMessage(), e);
+                    finishWithNoAnimation();
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error in dismissWithAnimation: " + e.getMessage(), e);
+            try {
+                host.onDismissed();
+            } catch (Exception e2) {
+                Log.e(TAG, "Error finishing checkout: " + e2.getMessage(), e2);
+            }
+        }
+    }
+    
+    private void finishWithNoAnimation() {
+        frameTracker.end();
+        if (backdropView != null) {
+            backdropView.setVisibility(View.INVISIBLE);
+        }
+        if (cardContainer != null) {
+            cardContainer.setVisibility(View.INVISIBLE);
+        }
+        
+        host.onDismissed();
+    }
+    
+    private void notifyListenerAndDismiss(String messageType, String messageBody, boolean success,
+                                          StashPayCard.PaymentEvent event) {
+        // Only the first payment result of a checkout is delivered; an opt-in does not end it
+        if (success && !session.moveTo(CheckoutSession.State.COMPLETED)) {
+            return;
+        }
+        try {
+            StashPayCard.StashPayListener listener = StashPayCard.getInstance().getListener();
+            if (listener != null) {
+                switch (messageType) {
+                    case "success":
+                        listener.onPaymentSuccess();
+                        break;
+                    case "failure":
+                        listener.onPaymentFailure();
+                        break;
+                    case "optin":
+                        listener.onOptInResponse(messageBody);
+                        break;
+                }
+            }
+            StashPayCard.getInstance().notifyPaymentEvent(event);
+            
+            dismissWithAnimation();
+        } catch (Exception e) {
+            Log.e(TAG, "Error in notifyListenerAndDismiss: " + e.getMessage(), e);
+            try {
+                host.onDismissed();
+            } catch (Exception e2) {
+                Log.e(TAG, "Error finishing checkout: " + e2.getMessage(), e2);
+            }
+        }
+    }
+
+    private class JSInterface implements StashJavaScriptBridge.Listener {
+        @Override
+        public void onPaymentSuccess(StashPayCard.PaymentEvent event) {
+            notifyListenerAndDismiss("success", "", true, event);
+        }
+        
+        @Override
+        public void onPaymentFailure(StashPayCard.PaymentEvent event) {
+            notifyListenerAndDismiss("failure", "", true, event);
+        }
+        
+        @Override
+        public void onPurchaseProcessing(StashPayCard.PaymentEvent event) {
+            session.moveTo(CheckoutSession.State.PROCESSING);
+            StashPayCard.getInstance().notifyPaymentEvent(event);
+        }
+        
+        @Override
+        public void setPaymentChannel(String optinType) {
+            notifyListenerAndDismiss("optin", optinType != null ? optinType : "", false, null);
+        }
+        
+        @Override
+        public void expand() {
+            try {
+                if (!usePopup && !isExpanded) {
+                    animateExpand();
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error in expand: " + e.getMessage(), e);
+            }
+        }
+        
+        @Override
+        public void collapse() {
+            try {
+                if (!usePopup && isExpanded) {
+                    animateCollapse();
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error in collapse: " + e.getMessage(), e);
+            }
+        }
+        
+        @Override
+        public void onBridgeReady() {
+            if (webView != null && StashCheckoutShell.isShellUrl(webView.getUrl())) return;
+            checkoutMetrics.markBridgeReady();
+        }
+        
+        @Override
+        public void onPageReady() {
+            if (revealGate != null) {
+                revealGate.onPageReady();
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.stash.popup;
+
+import android.app.Activity;
+import android.content.ComponentName;
+import android.content.Context;
+import android.graphics.Color;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.browser.customtabs.CustomTabsClient;
+import androidx.browser.customtabs.CustomTabsIntent;
+import androidx.browser.customtabs.CustomTabsServiceConnection;
+import androidx.browser.customtabs.CustomTabsSession;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a warm connection to the user's Custom Tabs browser.
+ *
+ * The service is bound once per process. On connection the browser is warmed up and a
+ * session is created, so launches reuse the browser process and URLs passed to
+ * {@link #mayLaunchUrl(String)} can be resolved and prefetched before the user opens them.
+ * Launches made before the connection is ready fall back to a session-less intent.
+ */
+public class StashCustomTabs {
+    private static final String TAG = "StashPayCard";
+    private static final String CUSTOM_TABS_INTENT_CLASS = "androidx.browser.customtabs.CustomTabsIntent";
+    private static StashCustomTabs instance;
+    private static Boolean available;
+
+    private Context appContext;
+    private CustomTabsServiceConnection connection;
+    private CustomTabsSession session;
+    private final List<String> pendingLaunchUrls = new ArrayList<>();
+
+    /**
+     * Whether the androidx.browser library is present at runtime. Resolved once.
+     */
+    static synchronized boolean isAvailable() {
+        if (available == null) {
+            try {
+                Class.forName(CUSTOM_TABS_INTENT_CLASS);
+                available = true;
+            } catch (ClassNotFoundException e) {
+                available = false;
+            }
+        }
+        return available;
+    }
+
+    public static synchronized StashCustomTabs getInstance() {
+        if (instance == null) {
+            instance = new StashCustomTabs();
+        }
+        return instance;
+    }
+
+    private StashCustomTabs() {
+    }
+
+    /**
+     * Binds the Custom Tabs service of the default browser if not already bound.
+     */
+    synchronized void bind(Context context) {
+        if (connection != null || context == null) return;
+
+        appContext = context.getApplicationContext();
+        String packageName = CustomTabsClient.getPackageName(appContext, null);
+        if (packageName == null) {
+            Log.w(TAG, "No browser supporting Custom Tabs is installed");
+            return;
+        }
+
+        CustomTabsServiceConnection serviceConnection = new CustomTabsServiceConnection() {
+            @Override
+            public void onCustomTabsServiceConnected(ComponentName name, CustomTabsClient client) {
+                onConnected(client);
+            }
+
+            @Override
+            public void onServiceDisconnected(ComponentName name) {
+                onDisconnected();
+            }
+        };
+
+        try {
+            if (CustomTabsClient.bindCustomTabsService(appContext, packageName, serviceConnection)) {
+                connection = serviceConnection;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error binding Custom Tabs service: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Whether a warm Custom Tabs session is available.
+     */
+    synchronized boolean isConnected() {
+        return session != null;
+    }
+
+    /**
+     * Hints that {@code url} is likely to be launched soon. Hints received before the
+     * session is ready are issued once it connects.
+     */
+    synchronized void mayLaunchUrl(String url) {
+        if (url == null || url.isEmpty()) return;
+
+        if (session == null) {
+            pendingLaunchUrls.remove(url);
+            pendingLaunchUrls.add(url);
+            return;
+        }
+        try {
+            session.mayLaunchUrl(Uri.parse(url), null, null);
+        } catch (Exception e) {
+            Log.e(TAG, "Error in mayLaunchUrl: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Opens {@code url} in a Custom Tab, using the warm session when available.
+     */
+    void launch(Activity activity, String url) {
+        if (activity == null || url == null || url.isEmpty()) {
+            throw new IllegalArgumentException("Invalid activity or URL");
+        }
+
+        CustomTabsSession currentSession;
+        synchronized (this) {
+            currentSession = session;
+        }
+
+        CustomTabsIntent.Builder builder = currentSession != null
+            ? new CustomTabsIntent.Builder(currentSession)
+            : new CustomTabsIntent.Builder();
+        builder.setToolbarColor(Color.BLACK);
+        builder.setShowTitle(true);
+        builder.build().launchUrl(activity, Uri.parse(url));
+    }
+
+    private synchronized void onConnected(CustomTabsClient client) {
+        try {
+            client.warmup(0);
+            session = client.newSession(null);
+        } catch (Exception e) {
+            Log.e(TAG, "Error warming up Custom Tabs: " + e.getMessage(), e);
+        }
+
+        if (session != null && !pendingLaunchUrls.isEmpty()) {
+            String mostLikely = pendingLaunchUrls.get(pendingLaunchUrls.size() - 1);
+            pendingLaunchUrls.clear();
+            mayLaunchUrl(mostLikely);
+        }
+    }
+
+    /**
+     * The browser process died. The binding is released so the next {@link #bind(Context)} makes a
+     * fresh one instead of leaking this one alongside it.
+     */
+    private synchronized void onDisconnected() {
+        session = null;
+        if (connection != null && appContext != null) {
+            try {
+                appContext.unbindService(connection);
+            } catch (Exception e) {
+                Log.e(TAG, "Error unbinding Custom Tabs service: " + e.getMessage(), e);
+            }
+        }
+        connection = null;
+    }
+}
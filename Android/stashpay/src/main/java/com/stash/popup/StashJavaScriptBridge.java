@@ -0,0 +1,168 @@
+package com.stash.popup;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.webkit.JavascriptInterface;
+import android.webkit.WebView;
+
+import androidx.webkit.JavaScriptReplyProxy;
+import androidx.webkit.WebMessageCompat;
+import androidx.webkit.WebViewCompat;
+
+import org.json.JSONObject;
+
+/**
+ * Native end of the bridge the checkout page talks to through {@code window.stash_sdk}.
+ *
+ * Pages send JSON messages of the form {@code {"type": ..., "data": ..., "t": ...}}.
+ * Where the WebView supports it, messages arrive through a {@link WebViewCompat.WebMessageListener}
+ * registered as {@code StashNative}, which is delivered directly on the main thread. Otherwise
+ * they arrive through the legacy {@code StashAndroid} {@link JavascriptInterface} on the JavaBridge
+ * thread and are posted to a single shared main-thread handler. Both transports end up in
+ * {@link #dispatch(String, String)}.
+ *
+ * The bridge is installed once when a {@link StashWebView} is created, so pooled WebViews
+ * already carry it. Whoever currently owns the WebView receives events by setting a
+ * {@link Listener}; events received while no owner is attached are dropped.
+ */
+public class StashJavaScriptBridge implements WebViewCompat.WebMessageListener {
+    private static final String TAG = "StashPayCard";
+    static final String INTERFACE_NAME = "StashAndroid";
+    static final String MESSAGE_LISTENER_NAME = "StashNative";
+
+    static final String TRANSPORT_MESSAGE_LISTENER = "message-listener";
+    static final String TRANSPORT_JAVASCRIPT_INTERFACE = "javascript-interface";
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /**
+     * Receives bridge events for the WebView's current owner. Always invoked on the main thread.
+     */
+    interface Listener {
+        void onPaymentSuccess(StashPayCard.PaymentEvent event);
+        void onPaymentFailure(StashPayCard.PaymentEvent event);
+        void onPurchaseProcessing(StashPayCard.PaymentEvent event);
+        void setPaymentChannel(String optinType);
+        void expand();
+        void collapse();
+        void onBridgeReady();
+        void onPageReady();
+    }
+
+    private volatile Listener listener;
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onPostMessage(WebView view, WebMessageCompat message, Uri sourceOrigin,
+                              boolean isMainFrame, JavaScriptReplyProxy replyProxy) {
+        if (!isMainFrame || message == null) return;
+        dispatch(message.getData(), TRANSPORT_MESSAGE_LISTENER);
+    }
+
+    @JavascriptInterface
+    public void postMessage(final String message) {
+        MAIN_HANDLER.post(() -> dispatch(message, TRANSPORT_JAVASCRIPT_INTERFACE));
+    }
+
+    @JavascriptInterface
+    public void onPaymentSuccess() {
+        postLegacy("onPaymentSuccess", null);
+    }
+
+    @JavascriptInterface
+    public void onPaymentFailure() {
+        postLegacy("onPaymentFailure", null);
+    }
+
+    @JavascriptInterface
+    public void onPurchaseProcessing() {
+        postLegacy("onPurchaseProcessing", null);
+    }
+
+    @JavascriptInterface
+    public void setPaymentChannel(String optinType) {
+        postLegacy("setPaymentChannel", optinType);
+    }
+
+    @JavascriptInterface
+    public void expand() {
+        postLegacy("expand", null);
+    }
+
+    @JavascriptInterface
+    public void collapse() {
+        postLegacy("collapse", null);
+    }
+
+    private void postLegacy(final String type, final String data) {
+        MAIN_HANDLER.post(() -> dispatch(type, data, 0, TRANSPORT_JAVASCRIPT_INTERFACE));
+    }
+
+    /**
+     * Parses a JSON bridge message and forwards it to the listener. Main thread only.
+     */
+    void dispatch(String message, String transport) {
+        if (message == null) return;
+        try {
+            JSONObject json = new JSONObject(message);
+            Object data = json.opt("data");
+            dispatch(json.optString("type"), data == null || data == JSONObject.NULL ? null : data.toString(),
+                json.optLong("t", 0), transport);
+        } catch (Exception e) {
+            Log.e(TAG, "Error parsing bridge message: " + e.getMessage(), e);
+        }
+    }
+
+    private void dispatch(String type, String data, long sentAtMs, String transport) {
+        // Delivery latency is only logged on request (adb shell setprop log.tag.StashPayCard VERBOSE)
+        if (sentAtMs > 0 && Log.isLoggable(TAG, Log.VERBOSE)) {
+            Log.v(TAG, "Bridge " + type + " via " + transport + " delivered in "
+                + (System.currentTimeMillis() - sentAtMs) + "ms");
+        }
+
+        Listener current = listener;
+        if (current == null || type == null) return;
+
+        try {
+            switch (type) {
+                case "onPaymentSuccess":
+                    current.onPaymentSuccess(StashPayCard.PaymentEvent.fromData(
+                        StashPayCard.PaymentEvent.Type.PAYMENT_SUCCESS, data));
+                    break;
+                case "onPaymentFailure":
+                    current.onPaymentFailure(StashPayCard.PaymentEvent.fromData(
+                        StashPayCard.PaymentEvent.Type.PAYMENT_FAILURE, data));
+                    break;
+                case "onPurchaseProcessing":
+                    current.onPurchaseProcessing(StashPayCard.PaymentEvent.fromData(
+                        StashPayCard.PaymentEvent.Type.PURCHASE_PROCESSING, data));
+                    break;
+                case "setPaymentChannel":
+                    current.setPaymentChannel(data != null ? data : "");
+                    break;
+                case "expand":
+                    current.expand();
+                    break;
+                case "collapse":
+                    current.collapse();
+                    break;
+                case "bridgeReady":
+                    current.onBridgeReady();
+                    break;
+                case "ready":
+                    current.onPageReady();
+                    break;
+                default:
+                    Log.w(TAG, "Unknown bridge message: " + type);
+                    break;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error dispatching bridge message " + type + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.stash.popup;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Keeps the WebViews the SDK holds in the background within the app's memory limits.
+ *
+ * Registered for the application's trim-memory and low-memory signals. As pressure rises it
+ * lowers the renderer priority of preloaded checkouts, then drops them, then empties the WebView
+ * pool; pooled WebViews waive their renderer priority whenever they are idle. Before the pool
+ * builds or keeps a WebView, or a checkout is preloaded, it checks the configured memory budget
+ * and whether the system is low on memory, so prewarming never pushes the host app towards
+ * being killed.
+ *
+ * Idle and preloaded WebViews are counted against the budget with fixed estimates; the renderer
+ * process shared by all WebViews is not counted. Main thread only, except {@link #register(Context)}
+ * and {@link #setBudgetMb(int)}.
+ */
+public class StashMemoryManager implements ComponentCallbacks2 {
+    private static final String TAG = "StashPayCard";
+    /** Estimated cost of a pooled WebView showing a blank page. */
+    static final int IDLE_WEBVIEW_ESTIMATE_MB = 20;
+    /** Estimated cost of a WebView holding a preloaded checkout page. */
+    static final int PRELOADED_WEBVIEW_ESTIMATE_MB = 60;
+    /** How long a trim signal keeps the SDK from warming up again. */
+    private static final long PRESSURE_HOLD_MS = 60 * 1000;
+    private static StashMemoryManager instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private Context appContext;
+    private boolean registered;
+    private volatile int budgetMb = -1;
+    private long lastPressureAt = CheckoutMetrics.NOT_REACHED;
+
+    public static synchronized StashMemoryManager getInstance() {
+        if (instance == null) {
+            instance = new StashMemoryManager();
+        }
+        return instance;
+    }
+
+    private StashMemoryManager() {
+    }
+
+    /**
+     * Registers for the application's memory signals. Only the first call has an effect.
+     * May be called from any thread.
+     */
+    void register(Context context) {
+        if (context == null) return;
+        final Context applicationContext = context.getApplicationContext();
+        mainHandler.post(() -> {
+            if (registered || applicationContext == null) return;
+            try {
+                applicationContext.registerComponentCallbacks(this);
+                appContext = applicationContext;
+                registered = true;
+            } catch (Exception e) {
+                Log.e(TAG, "Error registering for memory signals: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Sets how much memory, in megabytes, idle and preloaded WebViews may use together.
+     * A negative value removes the budget; 0 keeps no WebViews in the background.
+     */
+    void setBudgetMb(int megabytes) {
+        budgetMb = megabytes;
+        mainHandler.post(this::enforceBudget);
+    }
+
+    /**
+     * Whether the pool may build or keep one more idle WebView.
+     */
+    boolean canRetainIdleWebView() {
+        return canRetain(IDLE_WEBVIEW_ESTIMATE_MB);
+    }
+
+    /**
+     * Whether one more checkout may be preloaded in the background.
+     */
+    boolean canRetainPreload() {
+        return canRetain(PRELOADED_WEBVIEW_ESTIMATE_MB);
+    }
+
+    private boolean canRetain(int estimateMb) {
+        if (isUnderPressure()) return false;
+        int budget = budgetMb;
+        return budget < 0 || usedMb() + estimateMb <= budget;
+    }
+
+    private int usedMb() {
+        return StashWebViewPool.getInstance().idleCount() * IDLE_WEBVIEW_ESTIMATE_MB
+            + StashCheckoutPreloader.getInstance().size() * PRELOADED_WEBVIEW_ESTIMATE_MB;
+    }
+
+    private boolean isUnderPressure() {
+        if (lastPressureAt != CheckoutMetrics.NOT_REACHED
+                && CheckoutMetrics.now() - lastPressureAt < PRESSURE_HOLD_MS) {
+            return true;
+        }
+        if (appContext == null) return false;
+        try {
+            ActivityManager activityManager = (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE);
+            if (activityManager == null) return false;
+            if (activityManager.isLowRamDevice()) return true;
+            ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+            activityManager.getMemoryInfo(memoryInfo);
+            return memoryInfo.lowMemory;
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading memory info: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Drops preloaded checkouts, then idle WebViews, until the estimate fits the budget.
+     */
+    private void enforceBudget() {
+        int budget = budgetMb;
+        if (budget < 0) return;
+        StashCheckoutPreloader preloader = StashCheckoutPreloader.getInstance();
+        while (usedMb() > budget && preloader.size() > 0) {
+            preloader.evictEldest();
+        }
+        StashWebViewPool pool = StashWebViewPool.getInstance();
+        if (usedMb() > budget) {
+            pool.trimIdle(Math.max(0, budget / IDLE_WEBVIEW_ESTIMATE_MB));
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        try {
+            if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+                // The process is near the top of the kill list or the system is about to kill
+                // background processes: give everything back
+                lastPressureAt = CheckoutMetrics.now();
+                StashCheckoutPreloader.getInstance().clear();
+                StashWebViewPool.getInstance().trimIdle(0);
+            } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+                lastPressureAt = CheckoutMetrics.now();
+                StashCheckoutPreloader.getInstance().clear();
+            } else if (level == TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_MODERATE) {
+                // Pooled WebViews are always waived; let preloaded pages go too
+                StashCheckoutPreloader.getInstance().waiveRendererPriority();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error handling trim memory: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
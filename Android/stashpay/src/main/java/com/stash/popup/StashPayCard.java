@@ -1,6 +1,10 @@
 package com.stash.popup;
 
 import android.app.Activity;
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONObject;
 
 /**
  * StashPayCard - Native Android SDK for Stash Pay checkout integration.
@@ -42,10 +46,13 @@ import android.app.Activity;
  * </pre>
  */
 public class StashPayCard {
+    private static final String TAG = "StashPayCard";
     private static StashPayCard instance;
     private StashPayCardPlugin plugin;
-    private Activity activity;
     private StashPayListener listener;
+    private PaymentEventListener paymentEventListener;
+    private CheckoutMetricsListener checkoutMetricsListener;
+    private AnimationFrameStatsListener animationFrameStatsListener;
     
     /**
      * Callback interface for Stash Pay events.
@@ -91,6 +98,152 @@ public class StashPayCard {
         @Override public void onPageLoaded(long loadTimeMs) {}
     }
     
+    /**
+     * Payment event reported by the checkout page, including the payload it sent.
+     */
+    public static class PaymentEvent {
+        public enum Type {
+            PAYMENT_SUCCESS,
+            PAYMENT_FAILURE,
+            PURCHASE_PROCESSING
+        }
+        
+        /** The kind of event. */
+        public final Type type;
+        /** Order identifier sent by the page, or null if none was sent. */
+        public final String orderId;
+        /** Amount sent by the page, as sent, or null if none was sent. */
+        public final String amount;
+        /** ISO 4217 currency code sent by the page, or null if none was sent. */
+        public final String currency;
+        /** The raw payload sent by the page, or null if the page sent none. */
+        public final String data;
+        
+        PaymentEvent(Type type, String orderId, String amount, String currency, String data) {
+            this.type = type;
+            this.orderId = orderId;
+            this.amount = amount;
+            this.currency = currency;
+            this.data = data;
+        }
+        
+        static PaymentEvent fromData(Type type, String data) {
+            String orderId = null;
+            String amount = null;
+            String currency = null;
+            if (data != null && data.startsWith("{")) {
+                try {
+                    JSONObject json = new JSONObject(data);
+                    orderId = optString(json, "orderId", "order_id");
+                    amount = optString(json, "amount", null);
+                    currency = optString(json, "currency", null);
+                } catch (Exception ignored) {
+                    // Not a JSON object; only the raw payload is reported
+                }
+            }
+            return new PaymentEvent(type, orderId, amount, currency, data);
+        }
+        
+        private static String optString(JSONObject json, String key, String alternateKey) {
+            if (json.has(key) && !json.isNull(key)) return json.optString(key);
+            if (alternateKey != null && json.has(alternateKey) && !json.isNull(alternateKey)) {
+                return json.optString(alternateKey);
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * Optional listener receiving payment events together with the payload sent by the
+     * checkout page. Called on the main thread, in addition to {@link StashPayListener}.
+     */
+    public interface PaymentEventListener {
+        void onPaymentEvent(PaymentEvent event);
+    }
+    
+    /**
+     * Optional listener receiving the timing breakdown of each checkout session.
+     * Called on the main thread when the checkout is closed.
+     */
+    public interface CheckoutMetricsListener {
+        void onCheckoutMetrics(CheckoutMetrics metrics);
+    }
+    
+    /**
+     * Optional listener receiving frame timing for each card animation and drag gesture.
+     * Called on the main thread when the animation or gesture ends.
+     */
+    public interface AnimationFrameStatsListener {
+        void onAnimationFrameStats(AnimationFrameStats stats);
+    }
+    
+    /**
+     * What {@link #initialize(Context, InitOptions)} warms up ahead of the first checkout.
+     */
+    public static class InitOptions {
+        /** Load the WebView provider and its native library. */
+        public boolean warmWebViewProvider = true;
+        /** Open the WebView cookie store. */
+        public boolean warmCookieManager = true;
+        /** Start Safe Browsing, where the WebView supports it. */
+        public boolean warmSafeBrowsing = true;
+        /** Number of checkout WebViews to build ahead of time, as with {@link #prewarm(int)}. */
+        public int prewarmCount = 0;
+        /** Receives the time each step took, or null. */
+        public InitListener listener;
+        
+        public InitOptions() {}
+    }
+    
+    /**
+     * Time in milliseconds each {@link #initialize(Context, InitOptions)} step took on the main
+     * thread, or {@link #NOT_RUN} for steps that were disabled or not supported. Safe Browsing is
+     * timed until it reports that it is ready.
+     */
+    public static class InitTimings {
+        public static final long NOT_RUN = -1;
+        
+        /** Loading the WebView provider. */
+        public final long providerMs;
+        /** Opening the cookie store. */
+        public final long cookieManagerMs;
+        /** Starting Safe Browsing. */
+        public final long safeBrowsingMs;
+        /** From the start of the first step until all steps finished, including idle waits. */
+        public final long totalMs;
+        
+        InitTimings(long providerMs, long cookieManagerMs, long safeBrowsingMs, long totalMs) {
+            this.providerMs = providerMs;
+            this.cookieManagerMs = cookieManagerMs;
+            this.safeBrowsingMs = safeBrowsingMs;
+            this.totalMs = totalMs;
+        }
+        
+        @Override
+        public String toString() {
+            return "InitTimings{provider=" + providerMs + "ms, cookieManager=" + cookieManagerMs
+                + "ms, safeBrowsing=" + safeBrowsingMs + "ms, total=" + totalMs + "ms}";
+        }
+    }
+    
+    /**
+     * Listener receiving the result of {@link #initialize(Context, InitOptions)}.
+     * Called on the main thread.
+     */
+    public interface InitListener {
+        void onInitialized(InitTimings timings);
+    }
+    
+    /**
+     * How {@link #openCheckout(String)} presents the checkout card.
+     */
+    public enum PresentationMode {
+        /** In a separate, translucent Activity. The app's Activity is paused while it is shown. */
+        ACTIVITY,
+        /** Attached to the content view of the app's Activity, which keeps running. */
+        OVERLAY
+    }
+    
     /**
      * Configuration for custom popup sizing.
      */
@@ -126,14 +279,40 @@ public class StashPayCard {
         return instance;
     }
     
+    /**
+     * Warms up the WebView engine so the first checkout opens as fast as later ones.
+     * 
+     * Call this from {@code Application.onCreate}. Loading the WebView provider, opening the
+     * cookie store and starting Safe Browsing each run in their own idle slot of the main thread,
+     * so they do not delay app startup frames. Only the first call has an effect.
+     * 
+     * @param context Any context; the application context is kept
+     * @param options What to warm up, or null for the defaults
+     */
+    public static void initialize(Context context, InitOptions options) {
+        StashActivityTracker.getInstance().register(context);
+        StashWebViewWarmup.getInstance().start(context, options);
+    }
+    
+    /**
+     * Warms up the WebView engine with the default {@link InitOptions}.
+     * 
+     * @param context Any context; the application context is kept
+     */
+    public static void initialize(Context context) {
+        initialize(context, null);
+    }
+    
     /**
      * Sets the activity to use for displaying checkout UI.
-     * This must be called before opening any checkout.
+     * 
+     * The activity is held weakly. After the first call, or after
+     * {@link #initialize(Context, InitOptions)}, the SDK follows the app's foreground activity
+     * on its own, so there is no need to call this again in every {@code onResume}.
      * 
      * @param activity The current activity
      */
     public void setActivity(Activity activity) {
-        this.activity = activity;
         plugin.setActivity(activity);
     }
     
@@ -155,6 +334,77 @@ public class StashPayCard {
         return listener;
     }
     
+    /**
+     * Sets a listener for payment events carrying the page's payload, such as order id and amount.
+     * 
+     * @param listener The listener to receive payment events, or null to remove it
+     */
+    public void setPaymentEventListener(PaymentEventListener listener) {
+        this.paymentEventListener = listener;
+    }
+    
+    /**
+     * Gets the current payment event listener.
+     * @return The current PaymentEventListener, or null
+     */
+    public PaymentEventListener getPaymentEventListener() {
+        return paymentEventListener;
+    }
+    
+    /**
+     * Sets a listener receiving a {@link CheckoutMetrics} timing breakdown for every checkout.
+     * 
+     * @param listener The listener to receive metrics, or null to remove it
+     */
+    public void setCheckoutMetricsListener(CheckoutMetricsListener listener) {
+        this.checkoutMetricsListener = listener;
+    }
+    
+    /**
+     * Sets a listener that receives frame timing for the card's open, drag, expand, collapse
+     * and dismiss animations. Frames are only recorded while a listener is set.
+     * @param listener The listener, or null to stop recording
+     */
+    public void setAnimationFrameStatsListener(AnimationFrameStatsListener listener) {
+        this.animationFrameStatsListener = listener;
+    }
+    
+    AnimationFrameStatsListener getAnimationFrameStatsListener() {
+        return animationFrameStatsListener;
+    }
+    
+    void notifyAnimationFrameStats(AnimationFrameStats stats) {
+        AnimationFrameStatsListener current = animationFrameStatsListener;
+        if (current == null) return;
+        try {
+            current.onAnimationFrameStats(stats);
+        } catch (Exception e) {
+            Log.e(TAG, "Error in animation frame stats listener: " + e.getMessage(), e);
+        }
+    }
+    
+    void notifyCheckoutMetrics(CheckoutMetrics metrics) {
+        CheckoutMetricsListener current = checkoutMetricsListener;
+        if (metrics == null || !metrics.markDelivered()) return;
+        Log.d(TAG, "Checkout metrics: " + metrics);
+        if (current == null) return;
+        try {
+            current.onCheckoutMetrics(metrics);
+        } catch (Exception e) {
+            Log.e(TAG, "Error in checkout metrics listener: " + e.getMessage(), e);
+        }
+    }
+    
+    void notifyPaymentEvent(PaymentEvent event) {
+        PaymentEventListener current = paymentEventListener;
+        if (current == null || event == null) return;
+        try {
+            current.onPaymentEvent(event);
+        } catch (Exception e) {
+            Log.e(TAG, "Error in payment event listener: " + e.getMessage(), e);
+        }
+    }
+    
     /**
      * Opens a Stash Pay checkout URL in a sliding card UI.
      * 
@@ -167,6 +417,20 @@ public class StashPayCard {
         plugin.openCheckout(url);
     }
     
+    /**
+     * Loads a checkout URL into a hidden WebView ahead of time.
+     * 
+     * A later {@link #openCheckout(String)} or {@link #openPopup(String)} for the same URL
+     * shows the already rendered page instead of loading it. Up to three checkouts are
+     * kept preloaded, each for at most five minutes. The activity must be set before
+     * calling this method.
+     * 
+     * @param url The Stash Pay checkout URL the user is likely to open next
+     */
+    public void preloadCheckout(String url) {
+        plugin.preloadCheckout(url);
+    }
+    
     /**
      * Opens a Stash Pay URL in a centered popup dialog.
      * 
@@ -197,6 +461,71 @@ public class StashPayCard {
         }
     }
     
+    /**
+     * Builds checkout WebViews ahead of time so that opening a checkout does not pay
+     * for WebView construction on the UI thread.
+     * 
+     * WebViews are created one at a time while the main thread is idle and are reused
+     * across checkouts. The number kept is capped by {@link #setWebViewPoolSize(int)}.
+     * The activity must be set before calling this method.
+     * 
+     * @param count Number of WebViews to keep ready
+     */
+    public void prewarm(int count) {
+        plugin.prewarm(count);
+    }
+    
+    /**
+     * Sets the maximum number of prewarmed WebViews kept in memory. Defaults to 2.
+     * 
+     * @param size Maximum number of idle WebViews
+     */
+    public void setWebViewPoolSize(int size) {
+        plugin.setWebViewPoolSize(size);
+    }
+    
+    /**
+     * Caps the memory the SDK may hold in the background, in megabytes.
+     * 
+     * Prewarmed WebViews and preloaded checkouts are counted against the budget with fixed
+     * estimates; when a new one would not fit, it is not created. Lowering the budget releases
+     * preloaded checkouts first, then prewarmed WebViews. Independently of the budget, the SDK
+     * releases them when the system signals memory pressure and does not warm up on low-RAM
+     * devices or while the system is low on memory.
+     * 
+     * @param megabytes The budget; 0 keeps nothing in the background, a negative value (the
+     *                  default) sets no budget
+     */
+    public void setMemoryBudgetMb(int megabytes) {
+        plugin.setMemoryBudgetMb(megabytes);
+    }
+
+    /**
+     * Sets the disk space for the SDK's cache of versioned checkout assets, in megabytes.
+     *
+     * Content-hashed scripts, stylesheets, fonts and images of the checkout are kept in the app's
+     * cache directory and served from there on later checkouts. The least recently used assets
+     * are removed to stay within the size.
+     *
+     * @param megabytes The size of the cache; 0 disables it and deletes its files. Default is 20.
+     */
+    public void setAssetCacheSizeMb(int megabytes) {
+        plugin.setAssetCacheSizeMb(megabytes);
+    }
+
+    /**
+     * Sets whether fetches made by the checkout page's service worker are served from the asset cache.
+     *
+     * Android allows one service worker client per process and the SDK cannot chain to the app's,
+     * so enabling this replaces any client set with {@code ServiceWorkerControllerCompat}. Leave
+     * it off if your app uses its own.
+     *
+     * @param enabled true to route service worker fetches through the cache. Default is false.
+     */
+    public void setServiceWorkerAssetCacheEnabled(boolean enabled) {
+        plugin.setServiceWorkerAssetCacheEnabled(enabled);
+    }
+
     /**
      * Dismisses any currently displayed checkout dialog.
      */
@@ -261,4 +590,25 @@ public class StashPayCard {
     public void setCardConfiguration(float heightRatio, float verticalPosition, float widthRatio) {
         plugin.setCardConfiguration(heightRatio, verticalPosition, widthRatio);
     }
+    
+    /**
+     * Sets how {@link #openCheckout(String)} presents the checkout card.
+     * 
+     * {@link PresentationMode#OVERLAY} draws the card on top of the current Activity instead of
+     * starting a new one, so the Activity is not paused. Use it for games and other apps that
+     * stop rendering or release resources in {@code onPause}.
+     * 
+     * @param mode The presentation mode, {@link PresentationMode#ACTIVITY} by default
+     */
+    public void setPresentationMode(PresentationMode mode) {
+        plugin.setPresentationMode(mode);
+    }
+    
+    /**
+     * Gets how {@link #openCheckout(String)} presents the checkout card.
+     * @return The current presentation mode
+     */
+    public PresentationMode getPresentationMode() {
+        return plugin.getPresentationMode();
+    }
 }
@@ -1,5 +1,7 @@
 package com.stash.popup;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
 import android.app.Activity;
 import android.app.Dialog;
 import android.content.Intent;
@@ -21,15 +23,18 @@ import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.view.WindowManager;
 import android.webkit.CookieManager;
-import android.webkit.JavascriptInterface;
-import android.webkit.WebChromeClient;
 import android.webkit.WebSettings;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 import android.widget.FrameLayout;
 import android.widget.ProgressBar;
 import android.net.Uri;
 
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * Internal plugin class that handles the WebView and dialog management.
  * Use {@link StashPayCard} for the public API.
@@ -37,22 +42,30 @@ import android.net.Uri;
 public class StashPayCardPlugin {
     private static final String TAG = "StashPayCard";
     private static StashPayCardPlugin instance;
+    /** Repeated opens of the checkout just opened within this window are dropped. */
+    private static final long OPEN_COALESCE_WINDOW_MS = 500;
     
-    private Activity activity;
     private StashPayCard.StashPayListener listener;
 
     private Dialog currentDialog;
-    private WebView webView;
+    private WeakReference<Activity> dialogActivity;
+    private StashWebView webView;
     private FrameLayout currentContainer;
     private ProgressBar loadingIndicator;
     private ViewTreeObserver.OnGlobalLayoutListener orientationChangeListener;
     
     private float cardHeightRatio = 0.6f;
-    private boolean isCurrentlyPresented;
-    private boolean paymentSuccessHandled;
-    private boolean isPurchaseProcessing;
-    private boolean usePopupPresentation;
+    private final AtomicReference<CheckoutSession> currentSession = new AtomicReference<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    /** Requested but not yet presented. */
+    private final AtomicReference<OpenRequest> pendingOpen = new AtomicReference<>();
+    /** The last request presented, for {@link #OPEN_COALESCE_WINDOW_MS}. */
+    private final AtomicReference<OpenRequest> lastOpen = new AtomicReference<>();
+    private boolean popupDismissing;
+    private boolean popupSkeletonShowing;
     private boolean forceSafariViewController;
+    private StashPayCard.PresentationMode presentationMode = StashPayCard.PresentationMode.ACTIVITY;
+    private StashCheckoutView checkoutOverlay;
     private int lastOrientation = Configuration.ORIENTATION_UNDEFINED;
     
     private boolean useCustomSize;
@@ -62,90 +75,123 @@ public class StashPayCardPlugin {
     private float customLandscapeHeightMultiplier = 1.1385f;
     
     private long pageLoadStartTime;
+    private CheckoutSession popupSession;
+    private CheckoutMetrics popupMetrics;
+    private StashRevealGate revealGate;
+    private CheckoutSession pendingCardSession;
+    private WeakReference<Activity> cardActivity;
     
-    private class StashJavaScriptInterface {
-        @JavascriptInterface
-        public void onPaymentSuccess() {
-            if (paymentSuccessHandled) return;
-            paymentSuccessHandled = true;
-            isPurchaseProcessing = false;
+    /**
+     * One openCheckout or openPopup call waiting to be presented.
+     */
+    private static class OpenRequest {
+        final String url;
+        final WeakReference<Activity> activity;
+        final CheckoutSession session;
+        volatile long presentedAt;
 
-            new Handler(Looper.getMainLooper()).post(() -> {
-                try {
-                    if (listener != null) {
-                        listener.onPaymentSuccess();
-                    }
-                    dismissCurrentDialog();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error handling payment success: " + e.getMessage());
-                    cleanupAllViews();
+        OpenRequest(String url, Activity activity, boolean popup) {
+            this.url = url;
+            this.activity = new WeakReference<>(activity);
+            this.session = new CheckoutSession(popup);
+        }
+
+        boolean isSameCheckout(String otherUrl, boolean otherPopup) {
+            return session.popup == otherPopup && url.equals(otherUrl);
+        }
+    }
+    
+    private class StashJavaScriptInterface implements StashJavaScriptBridge.Listener {
+        @Override
+        public void onPaymentSuccess(StashPayCard.PaymentEvent event) {
+            CheckoutSession session = popupSession;
+            if (session == null || !session.moveTo(CheckoutSession.State.COMPLETED)) return;
+
+            try {
+                if (listener != null) {
+                    listener.onPaymentSuccess();
                 }
-            });
+                StashPayCard.getInstance().notifyPaymentEvent(event);
+                dismissCurrentDialog();
+            } catch (Exception e) {
+                Log.e(TAG, "Error handling payment success: " + e.getMessage());
+                cleanupAllViews();
+            }
         }
         
-        @JavascriptInterface
-        public void onPaymentFailure() {
-            if (paymentSuccessHandled) return;
-            paymentSuccessHandled = true;
-            isPurchaseProcessing = false;
-            new Handler(Looper.getMainLooper()).post(() -> {
-                try {
-                    if (listener != null) {
-                        listener.onPaymentFailure();
-                    }
-                    dismissCurrentDialog();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error handling payment failure: " + e.getMessage());
-                    cleanupAllViews();
+        @Override
+        public void onPaymentFailure(StashPayCard.PaymentEvent event) {
+            CheckoutSession session = popupSession;
+            if (session == null || !session.moveTo(CheckoutSession.State.COMPLETED)) return;
+
+            try {
+                if (listener != null) {
+                    listener.onPaymentFailure();
                 }
-            });
+                StashPayCard.getInstance().notifyPaymentEvent(event);
+                dismissCurrentDialog();
+            } catch (Exception e) {
+                Log.e(TAG, "Error handling payment failure: " + e.getMessage());
+                cleanupAllViews();
+            }
         }
         
-        @JavascriptInterface
-        public void onPurchaseProcessing() {
+        @Override
+        public void onPurchaseProcessing(StashPayCard.PaymentEvent event) {
+            CheckoutSession session = popupSession;
+            if (session != null) {
+                session.moveTo(CheckoutSession.State.PROCESSING);
+            }
             try {
-                isPurchaseProcessing = true;
-                new Handler(Looper.getMainLooper()).post(() -> {
-                    try {
-                        if (currentDialog != null && currentDialog.isShowing()) {
-                            currentDialog.setCanceledOnTouchOutside(false);
-                            currentDialog.setCancelable(false);
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error updating dialog dismissibility: " + e.getMessage(), e);
-                    }
-                });
+                StashPayCard.getInstance().notifyPaymentEvent(event);
+                if (currentDialog != null && currentDialog.isShowing()) {
+                    currentDialog.setCanceledOnTouchOutside(false);
+                    currentDialog.setCancelable(false);
+                }
             } catch (Exception e) {
-                Log.e(TAG, "Error in onPurchaseProcessing: " + e.getMessage(), e);
+                Log.e(TAG, "Error updating dialog dismissibility: " + e.getMessage(), e);
             }
         }
         
-        @JavascriptInterface
+        @Override
         public void setPaymentChannel(String optinType) {
-            new Handler(Looper.getMainLooper()).post(() -> {
-                try {
-                    if (listener != null) {
-                        listener.onOptInResponse(optinType != null ? optinType : "");
-                    }
-                    dismissCurrentDialog();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error handling payment channel: " + e.getMessage());
+            try {
+                if (listener != null) {
+                    listener.onOptInResponse(optinType != null ? optinType : "");
                 }
-            });
+                dismissCurrentDialog();
+            } catch (Exception e) {
+                Log.e(TAG, "Error handling payment channel: " + e.getMessage());
+            }
         }
         
-        @JavascriptInterface
+        @Override
         public void expand() {
             // Expand functionality can be implemented here if needed
         }
         
-        @JavascriptInterface
+        @Override
         public void collapse() {
             // Collapse functionality can be implemented here if needed
         }
+        
+        @Override
+        public void onBridgeReady() {
+            if (webView != null && StashCheckoutShell.isShellUrl(webView.getUrl())) return;
+            if (popupMetrics != null) {
+                popupMetrics.markBridgeReady();
+            }
+        }
+        
+        @Override
+        public void onPageReady() {
+            if (revealGate != null) {
+                revealGate.onPageReady();
+            }
+        }
     }
     
-    public static StashPayCardPlugin getInstance() {
+    public static synchronized StashPayCardPlugin getInstance() {
         if (instance == null) {
             instance = new StashPayCardPlugin();
         }
@@ -155,18 +201,114 @@ public class StashPayCardPlugin {
     private StashPayCardPlugin() {
     }
     
+    /**
+     * Makes {@code activity} the host for checkouts, held weakly. Later the host follows the
+     * foreground Activity through the application's lifecycle callbacks.
+     */
     void setActivity(Activity activity) {
-        this.activity = activity;
+        StashActivityTracker.getInstance().setActivity(activity);
+        bindCustomTabs(activity);
+        StashMemoryManager.getInstance().register(activity);
+    }
+    
+    private Activity getActivity() {
+        return StashActivityTracker.getInstance().getActivity();
+    }
+    
+    /**
+     * Releases the popup dialog and overlay if they belong to {@code destroyed}, so a finished
+     * host Activity is not kept alive through them.
+     */
+    void onHostActivityDestroyed(Activity destroyed) {
+        try {
+            if (currentDialog != null && dialogActivity != null && dialogActivity.get() == destroyed) {
+                if (currentDialog.isShowing()) {
+                    // Runs the dismiss listener, which reports the dismissal and cleans up
+                    currentDialog.dismiss();
+                }
+                cleanupAllViews();
+            }
+            if (checkoutOverlay != null && checkoutOverlay.getContext() == destroyed) {
+                removeCheckoutOverlay();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error releasing checkout of destroyed activity: " + e.getMessage(), e);
+        }
+    }
+    
+    private void bindCustomTabs(Activity activity) {
+        if (activity == null || !StashCustomTabs.isAvailable()) return;
+        try {
+            StashCustomTabs.getInstance().bind(activity);
+        } catch (Exception e) {
+            Log.e(TAG, "Error binding Custom Tabs: " + e.getMessage(), e);
+        }
     }
     
     void setListener(StashPayCard.StashPayListener listener) {
         this.listener = listener;
     }
     
+    void prewarm(int count) {
+        Activity activity = getActivity();
+        if (activity == null) {
+            Log.e(TAG, "Activity must be set before prewarming WebViews");
+            return;
+        }
+        StashWebViewPool.getInstance().prewarm(activity, count);
+    }
+    
+    void setWebViewPoolSize(int size) {
+        StashWebViewPool.getInstance().setMaxSize(size);
+    }
+    
+    void setMemoryBudgetMb(int megabytes) {
+        StashMemoryManager.getInstance().setBudgetMb(megabytes);
+    }
+    
+    void setAssetCacheSizeMb(int megabytes) {
+        StashAssetCache.getInstance().setMaxSizeBytes(megabytes * 1024L * 1024L);
+    }
+    
+    void setServiceWorkerAssetCacheEnabled(boolean enabled) {
+        StashAssetCache.getInstance().setServiceWorkerClientEnabled(enabled);
+    }
+    
+    public void preloadCheckout(String url) {
+        try {
+            Activity activity = getActivity();
+            if (activity == null || url == null || url.isEmpty()) {
+                Log.e(TAG, "Invalid activity or URL in preloadCheckout");
+                return;
+            }
+            
+            final Activity targetActivity = activity;
+            final String finalUrl = normalizeUrl(url, targetActivity);
+            StashAssetCache.getInstance().registerCheckoutUrl(finalUrl);
+            // A connected browser gets the hint whatever the presentation: the card hands some flows
+            // to a Custom Tab. When web checkout is forced, the hint also waits for the connection
+            if (StashCustomTabs.isAvailable()
+                    && (forceSafariViewController || StashCustomTabs.getInstance().isConnected())) {
+                StashCustomTabs.getInstance().mayLaunchUrl(finalUrl);
+            }
+            if (forceSafariViewController) {
+                return;
+            }
+            targetActivity.runOnUiThread(() -> {
+                try {
+                    StashCheckoutPreloader.getInstance().preload(targetActivity, finalUrl);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error preloading checkout: " + e.getMessage(), e);
+                }
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Error in preloadCheckout: " + e.getMessage(), e);
+        }
+    }
+    
     public void openCheckout(String url) {
         try {
-            usePopupPresentation = false;
-            openURLInternal(url);
+            openURLInternal(url, false);
         } catch (Exception e) {
             Log.e(TAG, "Error in openCheckout: " + e.getMessage(), e);
             cleanupAllViews();
@@ -175,9 +317,8 @@ public class StashPayCardPlugin {
     
     public void openPopup(String url) {
         try {
-            usePopupPresentation = true;
             useCustomSize = false;
-            openURLInternal(url);
+            openURLInternal(url, true);
         } catch (Exception e) {
             Log.e(TAG, "Error in openPopup: " + e.getMessage(), e);
             cleanupAllViews();
@@ -187,13 +328,12 @@ public class StashPayCardPlugin {
     public void openPopupWithSize(String url, float portraitWidthMultiplier, float portraitHeightMultiplier, 
                                    float landscapeWidthMultiplier, float landscapeHeightMultiplier) {
         try {
-            usePopupPresentation = true;
             customPortraitWidthMultiplier = portraitWidthMultiplier;
             customPortraitHeightMultiplier = portraitHeightMultiplier;
             customLandscapeWidthMultiplier = landscapeWidthMultiplier;
             customLandscapeHeightMultiplier = landscapeHeightMultiplier;
             useCustomSize = true;
-            openURLInternal(url);
+            openURLInternal(url, true);
         } catch (Exception e) {
             Log.e(TAG, "Error in openPopupWithSize: " + e.getMessage(), e);
             cleanupAllViews();
@@ -201,6 +341,7 @@ public class StashPayCardPlugin {
     }
     
     public void dismissDialog() {
+        Activity activity = getActivity();
         if (activity != null) {
             activity.runOnUiThread(() -> {
                 try {
@@ -215,9 +356,14 @@ public class StashPayCardPlugin {
     
     public void resetPresentationState() {
         try {
+            OpenRequest pending = pendingOpen.getAndSet(null);
+            if (pending != null) {
+                pending.session.moveTo(CheckoutSession.State.DISMISSED);
+            }
+            lastOpen.set(null);
             dismissDialog();
-            paymentSuccessHandled = false;
-            isCurrentlyPresented = false;
+            // Forget the current checkout; its container still reports its own dismissal
+            currentSession.set(null);
         } catch (Exception e) {
             Log.e(TAG, "Error in resetPresentationState: " + e.getMessage(), e);
             cleanupAllViews();
@@ -226,7 +372,8 @@ public class StashPayCardPlugin {
     
     public boolean isCurrentlyPresented() {
         try {
-            return isCurrentlyPresented;
+            CheckoutSession session = currentSession.get();
+            return session != null && session.isActive();
         } catch (Exception e) {
             Log.e(TAG, "Error in isCurrentlyPresented: " + e.getMessage(), e);
             return false;
@@ -258,55 +405,176 @@ public class StashPayCardPlugin {
         }
     }
     
+    void setPresentationMode(StashPayCard.PresentationMode mode) {
+        presentationMode = mode != null ? mode : StashPayCard.PresentationMode.ACTIVITY;
+    }
+    
+    StashPayCard.PresentationMode getPresentationMode() {
+        return presentationMode;
+    }
+    
     public boolean isPurchaseProcessing() {
         try {
-            return isPurchaseProcessing;
+            CheckoutSession session = currentSession.get();
+            return session != null && session.isProcessing();
         } catch (Exception e) {
             Log.e(TAG, "Error in isPurchaseProcessing: " + e.getMessage(), e);
             return false;
         }
     }
     
-    private void openURLInternal(String url) {
+    /**
+     * Records an open request and schedules its presentation. Requests are coalesced before any
+     * UI work: a repeat of a request still waiting, or of the checkout presented within
+     * {@link #OPEN_COALESCE_WINDOW_MS}, is dropped, and a different request replaces the one
+     * waiting. Only the latest request is presented, and not before a running dismiss animation
+     * has finished.
+     */
+    private void openURLInternal(String url, boolean popup) {
         try {
+            final Activity activity = getActivity();
             if (activity == null || url == null || url.isEmpty()) {
                 Log.e(TAG, "Invalid activity or URL");
                 return;
             }
 
-            if (!url.startsWith("http://") && !url.startsWith("https://")) {
-                url = "https://" + url;
-            }
-
-            try {
-                url = StashWebViewUtils.appendThemeQueryParameter(url, StashWebViewUtils.isDarkTheme(activity));
-            } catch (Exception e) {
-                Log.e(TAG, "Error appending theme parameter: " + e.getMessage(), e);
-            }
-
-            final String finalUrl = url;
-
-            activity.runOnUiThread(() -> {
-                try {
-                    if (usePopupPresentation) {
-                        createAndShowPopupDialog(finalUrl, activity);
-                    } else if (forceSafariViewController) {
-                        openWithChromeCustomTabs(finalUrl, activity);
-                    } else {
-                        launchPortraitActivity(finalUrl, activity);
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in UI thread operation: " + e.getMessage(), e);
-                    cleanupAllViews();
+            final String finalUrl = normalizeUrl(url, activity);
+            StashAssetCache.getInstance().registerCheckoutUrl(finalUrl);
+            OpenRequest request = new OpenRequest(finalUrl, activity, popup);
+            request.session.metrics.markOpenCheckout();
+            request.session.moveTo(CheckoutSession.State.OPENING);
+            OpenRequest pending;
+            do {
+                pending = pendingOpen.get();
+                if (pending != null && pending.isSameCheckout(finalUrl, popup)) {
+                    Log.d(TAG, "Checkout already being opened; ignoring repeated request");
+                    return;
                 }
-            });
+                OpenRequest last = lastOpen.get();
+                if (last != null && CheckoutMetrics.now() - last.presentedAt >= OPEN_COALESCE_WINDOW_MS) {
+                    lastOpen.compareAndSet(last, null);
+                    last = null;
+                }
+                if (pending == null && last != null && last.isSameCheckout(finalUrl, popup)
+                        && last.session.isActive()) {
+                    Log.d(TAG, "Checkout just opened; ignoring repeated request");
+                    return;
+                }
+            } while (!pendingOpen.compareAndSet(pending, request));
+            
+            currentSession.set(request.session);
+            if (pending != null) {
+                // Replaced before anything was shown; it ends without a callback
+                pending.session.moveTo(CheckoutSession.State.DISMISSED);
+            } else {
+                mainHandler.post(this::presentPendingOpen);
+            }
         } catch (Exception e) {
             Log.e(TAG, "Error in openURLInternal: " + e.getMessage(), e);
             cleanupAllViews();
         }
     }
     
-    private void launchPortraitActivity(String url, Activity activity) {
+    private final Runnable clearLastOpen = () -> lastOpen.set(null);
+    
+    /**
+     * Presents the latest open request, unless a dismiss animation is running, in which case
+     * it is presented once the dismissal completes. Main thread only.
+     */
+    private void presentPendingOpen() {
+        if (pendingOpen.get() == null) return;
+        if (popupDismissing || (checkoutOverlay != null && checkoutOverlay.isDismissing())) {
+            Log.d(TAG, "Checkout dismissing; opening next checkout when it is gone");
+            return;
+        }
+        // Takes whichever request is latest by now; a request made after this schedules its own
+        OpenRequest request = pendingOpen.getAndSet(null);
+        if (request == null) return;
+        request.presentedAt = CheckoutMetrics.now();
+        lastOpen.set(request);
+        currentSession.set(request.session);
+        mainHandler.removeCallbacks(clearLastOpen);
+        mainHandler.postDelayed(clearLastOpen, OPEN_COALESCE_WINDOW_MS);
+        
+        final CheckoutSession session = request.session;
+        Activity activity = request.activity.get();
+        if (activity == null || activity.isFinishing()) {
+            activity = getActivity();
+        }
+        if (activity == null) {
+            Log.e(TAG, "No activity to open checkout on");
+            session.moveTo(CheckoutSession.State.DISMISSED);
+            return;
+        }
+        
+        try {
+            if (session.popup) {
+                createAndShowPopupDialog(request.url, activity, session);
+            } else if (forceSafariViewController) {
+                openWithChromeCustomTabs(request.url, activity, session);
+            } else if (presentationMode == StashPayCard.PresentationMode.OVERLAY) {
+                showCheckoutOverlay(request.url, activity, session);
+            } else {
+                launchPortraitActivity(request.url, activity, session);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error in UI thread operation: " + e.getMessage(), e);
+            session.moveTo(CheckoutSession.State.DISMISSED);
+            cleanupAllViews();
+        }
+    }
+    
+    private String normalizeUrl(String url, Activity activity) {
+        if (!url.startsWith("http://") && !url.startsWith("https://")) {
+            url = "https://" + url;
+        }
+
+        try {
+            url = StashWebViewUtils.appendThemeQueryParameter(url, StashWebViewUtils.isDarkTheme(activity));
+        } catch (Exception e) {
+            Log.e(TAG, "Error appending theme parameter: " + e.getMessage(), e);
+        }
+        return url;
+    }
+    
+    /**
+     * Hands the session of the checkout being launched to the card Activity. Returns null
+     * if the Activity was not started by {@link #openCheckout(String)}.
+     */
+    CheckoutSession takePendingCardSession() {
+        CheckoutSession session = pendingCardSession;
+        pendingCardSession = null;
+        return session;
+    }
+    
+    /**
+     * Puts back a session taken with {@link #takePendingCardSession()} that the card could not use.
+     */
+    void restorePendingCardSession(CheckoutSession session) {
+        if (pendingCardSession == null) {
+            pendingCardSession = session;
+        }
+    }
+    
+    void setCardActivity(Activity card) {
+        cardActivity = new WeakReference<>(card);
+    }
+    
+    void clearCardActivity(Activity card) {
+        if (cardActivity != null && cardActivity.get() == card) {
+            cardActivity = null;
+        }
+    }
+    
+    /**
+     * Whether a card Activity is alive and will receive the next launch through onNewIntent.
+     */
+    private boolean isCardActivityAlive() {
+        Activity card = cardActivity != null ? cardActivity.get() : null;
+        return card != null && !card.isFinishing();
+    }
+    
+    private void launchPortraitActivity(String url, Activity activity, CheckoutSession session) {
         try {
             android.view.Display display = activity.getWindowManager().getDefaultDisplay();
             int rotation = display.getRotation();
@@ -317,16 +585,81 @@ public class StashPayCardPlugin {
             intent.putExtra("url", url);
             intent.putExtra("initialURL", url);
             intent.putExtra("cardHeightRatio", cardHeightRatio);
-            intent.putExtra("usePopup", usePopupPresentation);
+            intent.putExtra("usePopup", session.popup);
             intent.putExtra("wasLandscape", isLandscape);
             intent.addFlags(Intent.FLAG_ACTIVITY_NO_ANIMATION | Intent.FLAG_ACTIVITY_REORDER_TO_FRONT);
             
+            // Start fetching now so the network overlaps the Activity launch; the card adopts
+            // this WebView instead of creating its own. Only a pooled WebView is used here:
+            // building one would hold up the launch, so without one the card builds it after
+            // its first frame. A card already on screen navigates its own WebView in onNewIntent.
+            if (!isCardActivityAlive() && StashWebViewPool.getInstance().idleCount() > 0) {
+                try {
+                    StashCheckoutPreloader.getInstance().preload(activity, url, true);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error starting checkout load: " + e.getMessage(), e);
+                }
+            }
+            
+            pendingCardSession = session;
             activity.startActivity(intent);
             activity.overridePendingTransition(0, 0);
-            isCurrentlyPresented = true;
         } catch (Exception e) {
             Log.e(TAG, "Failed to launch Activity: " + e.getMessage());
+            pendingCardSession = null;
+            session.moveTo(CheckoutSession.State.DISMISSED);
+        }
+    }
+    
+    private void showCheckoutOverlay(String url, final Activity activity, CheckoutSession session) {
+        try {
+            ViewGroup content = activity.findViewById(android.R.id.content);
+            if (content == null) {
+                Log.e(TAG, "Activity has no content view; launching checkout Activity instead");
+                launchPortraitActivity(url, activity, session);
+                return;
+            }
+            
+            if (checkoutOverlay != null && checkoutOverlay.navigateTo(url, url, session)) {
+                return;
+            }
+            removeCheckoutOverlay();
+            
+            boolean isLandscape = activity.getResources().getConfiguration().orientation
+                == Configuration.ORIENTATION_LANDSCAPE;
+            checkoutOverlay = new StashCheckoutView(activity, new StashCheckoutView.Host() {
+                @Override
+                public void onDismissStarted() {
+                }
+                
+                @Override
+                public void onDismissed() {
+                    removeCheckoutOverlay();
+                    presentPendingOpen();
+                }
+            }, StashPayCard.PresentationMode.OVERLAY, url, url, false, isLandscape, session);
+            content.addView(checkoutOverlay, new FrameLayout.LayoutParams(
+                FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT));
+            checkoutOverlay.show();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to show checkout overlay: " + e.getMessage(), e);
+            session.moveTo(CheckoutSession.State.DISMISSED);
+            removeCheckoutOverlay();
+        }
+    }
+    
+    private void removeCheckoutOverlay() {
+        StashCheckoutView overlay = checkoutOverlay;
+        if (overlay == null) return;
+        checkoutOverlay = null;
+        try {
+            if (overlay.getParent() != null) {
+                ((ViewGroup) overlay.getParent()).removeView(overlay);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error removing checkout overlay: " + e.getMessage(), e);
         }
+        overlay.release();
     }
     
     private class PopupOrientationListener implements ViewTreeObserver.OnGlobalLayoutListener {
@@ -339,7 +672,8 @@ public class StashPayCardPlugin {
         @Override
         public void onGlobalLayout() {
             try {
-                if (currentContainer != null && currentDialog != null && currentDialog.isShowing() && activity != null) {
+                if (!popupDismissing && currentContainer != null && currentDialog != null
+                        && currentDialog.isShowing() && activity != null) {
                     int currentOrientation = activity.getResources().getConfiguration().orientation;
                     
                     if (currentOrientation != lastOrientation && currentOrientation != Configuration.ORIENTATION_UNDEFINED) {
@@ -385,7 +719,7 @@ public class StashPayCardPlugin {
         }
     }
 
-    private void createAndShowPopupDialog(String url, final Activity activity) {
+    private void createAndShowPopupDialog(String url, final Activity activity, final CheckoutSession session) {
         if (activity == null || url == null || url.isEmpty()) {
             Log.e(TAG, "Invalid activity or URL in createAndShowPopupDialog");
             return;
@@ -394,11 +728,14 @@ public class StashPayCardPlugin {
         boolean preserveUseCustomSize = useCustomSize;
         cleanupAllViews();
         useCustomSize = preserveUseCustomSize;
-        paymentSuccessHandled = false;
+        popupSession = session;
+        popupMetrics = session.metrics;
 
         try {
             currentDialog = new Dialog(activity, android.R.style.Theme_Translucent_NoTitleBar_Fullscreen);
+            dialogActivity = new WeakReference<>(activity);
             currentDialog.requestWindowFeature(Window.FEATURE_NO_TITLE);
+            session.metrics.markContainerCreated();
 
             FrameLayout mainFrame = new FrameLayout(activity);
             try {
@@ -410,7 +747,7 @@ public class StashPayCardPlugin {
             
             mainFrame.setOnClickListener(v -> {
                 try {
-                    if (!isPurchaseProcessing && currentDialog != null && currentDialog.isShowing() && v == mainFrame) {
+                    if (!session.isProcessing() && currentDialog != null && currentDialog.isShowing() && v == mainFrame) {
                         currentDialog.dismiss();
                     }
                 } catch (Exception e) {
@@ -475,13 +812,14 @@ public class StashPayCardPlugin {
             }
             
             try {
-                webView = new WebView(activity);
+                StashCheckoutPreloader.Entry preloaded = StashCheckoutPreloader.getInstance().take(activity, url);
+                webView = preloaded != null ? preloaded.webView : StashWebViewPool.getInstance().acquire(activity);
                 FrameLayout.LayoutParams webViewParams = new FrameLayout.LayoutParams(
                     FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT);
                 webView.setLayoutParams(webViewParams);
                 currentContainer.addView(webView);
                 
-                setupPopupWebView(webView, url, activity);
+                setupPopupWebView(webView, url, activity, preloaded);
             } catch (Exception e) {
                 Log.e(TAG, "Error creating WebView: " + e.getMessage(), e);
                 cleanupAllViews();
@@ -509,27 +847,31 @@ public class StashPayCardPlugin {
             
             currentContainer.setOnClickListener(v -> {});
             
-            currentDialog.setCanceledOnTouchOutside(!isPurchaseProcessing);
-            currentDialog.setCancelable(!isPurchaseProcessing);
+            currentDialog.setCanceledOnTouchOutside(true);
+            currentDialog.setCancelable(true);
 
             currentDialog.setOnDismissListener(dialog -> {
                 try {
-                    if (!paymentSuccessHandled && listener != null) {
+                    if (session.moveTo(CheckoutSession.State.DISMISSED) && listener != null) {
                         listener.onDialogDismissed();
                     }
                 } catch (Exception e) {
                     Log.e(TAG, "Error in dismiss listener: " + e.getMessage(), e);
                 }
-                cleanupAllViews();
-                isCurrentlyPresented = false;
+                // The dismissal is delivered after the dialog is gone; by then a new popup may
+                // have replaced this one and must be left alone
+                if (popupSession == session) {
+                    cleanupAllViews();
+                    presentPendingOpen();
+                }
             });
             
             try {
                 currentDialog.show();
                 animateFadeIn();
-                isCurrentlyPresented = true;
             } catch (Exception e) {
                 Log.e(TAG, "Error showing dialog: " + e.getMessage(), e);
+                session.moveTo(CheckoutSession.State.DISMISSED);
                 cleanupAllViews();
             }
         } catch (Exception e) {
@@ -550,7 +892,14 @@ public class StashPayCardPlugin {
                     .scaleY(1.0f)
                     .setDuration(200)
                     .setInterpolator(new android.view.animation.AccelerateDecelerateInterpolator())
+                    .withEndAction(() -> {
+                        if (popupMetrics != null) {
+                            popupMetrics.markEntryAnimationFinished();
+                        }
+                    })
                     .start();
+            } else if (popupMetrics != null) {
+                popupMetrics.markEntryAnimationFinished();
             }
         } catch (Exception e) {
             Log.e(TAG, "Error in animateFadeIn: " + e.getMessage(), e);
@@ -561,17 +910,46 @@ public class StashPayCardPlugin {
         try {
             if (currentDialog != null && currentContainer != null) {
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-                    currentContainer.animate()
+                    popupDismissing = true;
+                    final Dialog dialog = currentDialog;
+                    final View container = currentContainer;
+                    // A listener rather than an end action: the dismissal must also complete when
+                    // another animation on the container cancels this one
+                    container.animate()
                         .alpha(0.0f)
                         .scaleX(0.9f)
                         .scaleY(0.9f)
                         .setDuration(250)
                         .setInterpolator(new SpringInterpolator())
-                        .withEndAction(() -> {
-                            try {
-                                if (currentDialog != null) currentDialog.dismiss();
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error dismissing dialog in animation: " + e.getMessage(), e);
+                        .setListener(new AnimatorListenerAdapter() {
+                            private boolean finished;
+
+                            @Override
+                            public void onAnimationEnd(Animator animation) {
+                                finishDismiss();
+                            }
+
+                            @Override
+                            public void onAnimationCancel(Animator animation) {
+                                finishDismiss();
+                            }
+
+                            private void finishDismiss() {
+                                if (finished) return;
+                                finished = true;
+                                container.animate().setListener(null);
+                                try {
+                                    if (dialog.isShowing()) {
+                                        // The dismiss listener cleans up and presents any queued open
+                                        dialog.dismiss();
+                                    } else if (currentDialog == dialog || currentDialog == null) {
+                                        popupDismissing = false;
+                                        presentPendingOpen();
+                                    }
+                                } catch (Exception e) {
+                                    Log.e(TAG, "Error dismissing dialog in animation: " + e.getMessage(), e);
+                                    popupDismissing = false;
+                                }
                             }
                         })
                         .start();
@@ -593,25 +971,71 @@ public class StashPayCardPlugin {
         }
     }
     
-    private void setupPopupWebView(WebView webView, String url, final Activity activity) {
+    private void setupPopupWebView(StashWebView webView, String url, final Activity activity,
+                                   StashCheckoutPreloader.Entry preloaded) {
         if (webView == null || activity == null || url == null || url.isEmpty()) {
             Log.e(TAG, "Invalid parameters in setupPopupWebView");
             return;
         }
 
-        try {
-            StashWebViewUtils.configureWebViewSettings(webView, StashWebViewUtils.isDarkTheme(activity));
-        } catch (Exception e) {
-            Log.e(TAG, "Error configuring WebView settings: " + e.getMessage(), e);
+        if (revealGate != null) {
+            revealGate.cancel();
         }
-        
+        final CheckoutSession session = popupSession;
+        final StashRevealGate gate = new StashRevealGate(() -> {
+            String target = StashCheckoutShell.targetOf(webView.getUrl());
+            if (target != null) {
+                // The gate timed out on the shell: load the live checkout and reveal it when it draws
+                Log.w(TAG, "Checkout shell did not hand over, loading checkout directly");
+                webView.loadUrl(target);
+                return;
+            }
+            popupSkeletonShowing = false;
+            hideLoadingIndicator(activity);
+            webView.setVisibility(View.VISIBLE);
+            if (session != null) {
+                session.moveTo(CheckoutSession.State.INTERACTIVE);
+            }
+            if (popupMetrics != null) {
+                popupMetrics.markContentShown();
+            }
+        });
+        revealGate = gate;
+
         webView.setWebViewClient(new WebViewClient() {
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                try {
+                    WebResourceResponse shell = StashCheckoutShell.getInstance().intercept(request);
+                    if (shell != null) return shell;
+                    return StashAssetCache.getInstance().intercept(view.getContext(), request,
+                        session != null ? session.metrics : null);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error intercepting request: " + e.getMessage(), e);
+                    return null;
+                }
+            }
+            
             @Override
             public void onPageStarted(WebView view, String url, android.graphics.Bitmap favicon) {
                 try {
                     super.onPageStarted(view, url, favicon);
-                    pageLoadStartTime = System.currentTimeMillis();
-                    showLoadingIndicator(activity);
+                    if (StashCheckoutShell.isShellUrl(url)) {
+                        // Armed so a shell that never hands over still times out to the live checkout
+                        gate.arm();
+                        return;
+                    }
+                    pageLoadStartTime = CheckoutMetrics.now();
+                    if (session != null) {
+                        session.moveTo(CheckoutSession.State.LOADING);
+                    }
+                    if (popupMetrics != null) {
+                        popupMetrics.markNavigationStart(pageLoadStartTime);
+                    }
+                    if (!popupSkeletonShowing) {
+                        showLoadingIndicator(activity);
+                    }
+                    gate.arm();
                     injectStashSDKFunctions();
                 } catch (Exception e) {
                     Log.e(TAG, "Error in onPageStarted: " + e.getMessage(), e);
@@ -622,9 +1046,13 @@ public class StashPayCardPlugin {
             public void onPageFinished(WebView view, String url) {
                 try {
                     super.onPageFinished(view, url);
+                    if (StashCheckoutShell.isShellUrl(url)) return;
                     
+                    if (popupMetrics != null) {
+                        popupMetrics.markPageFinished(CheckoutMetrics.now());
+                    }
                     if (pageLoadStartTime > 0) {
-                        long loadTimeMs = System.currentTimeMillis() - pageLoadStartTime;
+                        long loadTimeMs = CheckoutMetrics.now() - pageLoadStartTime;
                         try {
                             if (listener != null) {
                                 listener.onPageLoaded(loadTimeMs);
@@ -636,16 +1064,40 @@ public class StashPayCardPlugin {
                     }
                     
                     injectStashSDKFunctions();
-                    view.postDelayed(() -> {
-                        try {
+                    gate.onContentVisible(view, "page finished");
+                } catch (Exception e) {
+                    Log.e(TAG, "Error in onPageFinished: " + e.getMessage(), e);
+                }
+            }
+            
+            @Override
+            public void onPageCommitVisible(WebView view, String url) {
+                try {
+                    super.onPageCommitVisible(view, url);
+                    if (StashCheckoutShell.isShellUrl(url)) {
+                        // The bundled skeleton replaces the spinner until the checkout is revealed
+                        Runnable shown = () -> {
+                            if (gate.isRevealed()) return;
+                            popupSkeletonShowing = true;
                             hideLoadingIndicator(activity);
-                            view.setVisibility(View.VISIBLE);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error in delayed page finished handler: " + e.getMessage(), e);
+                            webView.setVisibility(View.VISIBLE);
+                            if (popupMetrics != null) {
+                                popupMetrics.markSkeletonShown();
+                            }
+                        };
+                        if (!StashWebViewUtils.postVisualStateCallback(view, shown)) {
+                            shown.run();
                         }
-                    }, 300);
+                        return;
+                    }
+                    final CheckoutMetrics metrics = popupMetrics;
+                    if (metrics != null) {
+                        metrics.markCommitVisible();
+                        StashWebViewUtils.postVisualStateCallback(view, metrics::markFirstVisualFrame);
+                    }
+                    gate.onContentVisible(view, "commit visible");
                 } catch (Exception e) {
-                    Log.e(TAG, "Error in onPageFinished: " + e.getMessage(), e);
+                    Log.e(TAG, "Error in onPageCommitVisible: " + e.getMessage(), e);
                 }
             }
             
@@ -664,12 +1116,38 @@ public class StashPayCardPlugin {
         });
         
         try {
-            webView.setWebChromeClient(new WebChromeClient());
-            webView.addJavascriptInterface(new StashJavaScriptInterface(), "StashAndroid");
+            if (popupMetrics != null) {
+                popupMetrics.setWebViewSource(webView.source);
+                if (preloaded != null) {
+                    popupMetrics.markNavigationStart(preloaded.pageStartedAt);
+                    popupMetrics.markPageFinished(preloaded.pageFinishedAt);
+                }
+            }
+            webView.bridge.setListener(new StashJavaScriptInterface());
             webView.setVerticalScrollBarEnabled(false);
             webView.setHorizontalScrollBarEnabled(false);
             webView.setBackgroundColor(Color.TRANSPARENT);
-            webView.loadUrl(url);
+            if (popupMetrics != null) {
+                popupMetrics.markWebViewReady();
+            }
+            if (preloaded != null && session != null) {
+                // The page started loading before this checkout was opened
+                session.moveTo(CheckoutSession.State.LOADING);
+            }
+            if (preloaded == null) {
+                webView.installCheckoutBridge(url);
+                webView.loadUrl(StashCheckoutShell.getInstance().wrap(activity, url,
+                    StashWebViewUtils.isDarkTheme(activity)));
+            } else if (!preloaded.pageFinished) {
+                // onPageFinished still reports the load, measured from its real start
+                if (preloaded.pageStartedAt > 0) {
+                    pageLoadStartTime = preloaded.pageStartedAt;
+                }
+                showLoadingIndicator(activity);
+                gate.arm();
+            } else {
+                gate.revealNow();
+            }
         } catch (Exception e) {
             Log.e(TAG, "Error setting up WebView: " + e.getMessage(), e);
             cleanupAllViews();
@@ -680,7 +1158,7 @@ public class StashPayCardPlugin {
         if (webView == null) return;
         
         try {
-            webView.evaluateJavascript(StashWebViewUtils.JS_SDK_SCRIPT, null);
+            webView.injectSdkIfNeeded();
         } catch (Exception e) {
             Log.e(TAG, "Error injecting SDK functions: " + e.getMessage(), e);
         }
@@ -721,71 +1199,35 @@ public class StashPayCardPlugin {
         }
     }
     
-    private void openWithChromeCustomTabs(String url, Activity activity) {
+    private void openWithChromeCustomTabs(String url, Activity activity, CheckoutSession session) {
         try {
-            if (isChromeCustomTabsAvailable()) {
+            if (StashCustomTabs.isAvailable()) {
                 Log.d(TAG, "Opening URL with Chrome Custom Tabs");
-                openWithReflectionChromeCustomTabs(url, activity);
+                openWithCustomTabs(url, activity, session);
             } else {
                 Log.w(TAG, "Chrome Custom Tabs not available. Falling back to default browser.");
-                openWithDefaultBrowser(url, activity);
+                openWithDefaultBrowser(url, activity, session);
             }
         } catch (Exception e) {
             Log.e(TAG, "Failed to open browser: " + e.getMessage());
             try {
-                openWithDefaultBrowser(url, activity);
+                openWithDefaultBrowser(url, activity, session);
             } catch (Exception fallbackException) {
                 Log.e(TAG, "Failed to open default browser: " + fallbackException.getMessage());
+                session.moveTo(CheckoutSession.State.DISMISSED);
             }
         }
     }
     
-    private boolean isChromeCustomTabsAvailable() {
-        try {
-            Class.forName("androidx.browser.customtabs.CustomTabsIntent");
-            return true;
-        } catch (ClassNotFoundException e) {
-            return false;
-        }
-    }
-    
-    private void openWithReflectionChromeCustomTabs(String url, Activity activity) throws Exception {
-        if (activity == null || url == null || url.isEmpty()) {
-            throw new IllegalArgumentException("Invalid activity or URL");
-        }
-
-        Class<?> customTabsIntentClass = Class.forName("androidx.browser.customtabs.CustomTabsIntent");
-        Class<?> builderClass = Class.forName("androidx.browser.customtabs.CustomTabsIntent$Builder");
-
-        Object builder = builderClass.newInstance();
-        java.lang.reflect.Method setToolbarColor = builderClass.getMethod("setToolbarColor", int.class);
-        setToolbarColor.invoke(builder, Color.parseColor("#000000"));
-
-        java.lang.reflect.Method setShowTitle = builderClass.getMethod("setShowTitle", boolean.class);
-        setShowTitle.invoke(builder, true);
-
-        java.lang.reflect.Method build = builderClass.getMethod("build");
-        Object customTabsIntent = build.invoke(builder);
-
-        java.lang.reflect.Method launchUrl = customTabsIntentClass.getMethod("launchUrl", 
-            android.content.Context.class, Uri.class);
-        launchUrl.invoke(customTabsIntent, activity, Uri.parse(url));
-
-        isCurrentlyPresented = true;
-        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-            try {
-                if (listener != null) {
-                    listener.onDialogDismissed();
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error sending dialog dismissed: " + e.getMessage(), e);
-            }
-        }, 1000);
+    private void openWithCustomTabs(String url, Activity activity, CheckoutSession session) {
+        StashCustomTabs.getInstance().launch(activity, url);
+        scheduleBrowserDismissed(session);
     }
     
-    private void openWithDefaultBrowser(String url, Activity activity) {
+    private void openWithDefaultBrowser(String url, Activity activity, CheckoutSession session) {
         if (activity == null || url == null || url.isEmpty()) {
             Log.e(TAG, "Invalid activity or URL in openWithDefaultBrowser");
+            session.moveTo(CheckoutSession.State.DISMISSED);
             return;
         }
 
@@ -793,28 +1235,37 @@ public class StashPayCardPlugin {
             Intent browserIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
             browserIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
             activity.startActivity(browserIntent);
-            isCurrentlyPresented = true;
-
-            new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                try {
-                    if (listener != null) {
-                        listener.onDialogDismissed();
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error sending dialog dismissed: " + e.getMessage(), e);
-                }
-            }, 1000);
+            scheduleBrowserDismissed(session);
         } catch (Exception e) {
             Log.e(TAG, "Error opening default browser: " + e.getMessage(), e);
-            isCurrentlyPresented = false;
+            session.moveTo(CheckoutSession.State.DISMISSED);
         }
     }
     
+    /**
+     * The browser reports nothing back, so the checkout is considered dismissed once it has
+     * been handed over.
+     */
+    private void scheduleBrowserDismissed(final CheckoutSession session) {
+        mainHandler.postDelayed(() -> {
+            try {
+                if (session.moveTo(CheckoutSession.State.DISMISSED) && listener != null) {
+                    listener.onDialogDismissed();
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error sending dialog dismissed: " + e.getMessage(), e);
+            }
+        }, 1000);
+    }
+    
     private void dismissCurrentDialog() {
         try {
             if (currentDialog != null) {
                 dismissPopupDialog();
             }
+            if (checkoutOverlay != null) {
+                checkoutOverlay.dismiss();
+            }
         } catch (Exception e) {
             Log.e(TAG, "Error in dismissCurrentDialog: " + e.getMessage(), e);
             cleanupAllViews();
@@ -823,6 +1274,11 @@ public class StashPayCardPlugin {
     
     private void cleanupAllViews() {
         try {
+            if (revealGate != null) {
+                revealGate.cancel();
+                revealGate = null;
+            }
+            
             if (loadingIndicator != null) {
                 try {
                     if (loadingIndicator.getParent() != null) {
@@ -840,14 +1296,11 @@ public class StashPayCardPlugin {
                 }
                 currentDialog = null;
             }
+            dialogActivity = null;
             
             if (webView != null) {
                 try {
-                    if (webView.getParent() != null) {
-                        ((ViewGroup)webView.getParent()).removeView(webView);
-                    }
-                    webView.stopLoading();
-                    webView.destroy();
+                    StashWebViewPool.getInstance().release(webView);
                 } catch (Exception e) {
                     Log.e(TAG, "Error cleaning up WebView: " + e.getMessage());
                 }
@@ -873,12 +1326,18 @@ public class StashPayCardPlugin {
             }
             
             orientationChangeListener = null;
+            
+            if (popupMetrics != null) {
+                StashPayCard.getInstance().notifyCheckoutMetrics(popupMetrics);
+                popupMetrics = null;
+            }
         } catch (Exception e) {
             Log.e(TAG, "Error during cleanup: " + e.getMessage());
         }
         
-        isPurchaseProcessing = false;
-        usePopupPresentation = false;
+        popupSession = null;
+        popupDismissing = false;
+        popupSkeletonShowing = false;
     }
     
     private int[] calculatePopupDimensions(Activity activity) {
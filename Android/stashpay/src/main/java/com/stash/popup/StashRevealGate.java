@@ -0,0 +1,95 @@
+package com.stash.popup;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.webkit.WebView;
+
+/**
+ * Decides when a loading checkout is shown to the user, and makes sure it is shown only once per navigation.
+ *
+ * The checkout is revealed on whichever of these happens first:
+ * <ul>
+ *   <li>the first frame of new content is ready to draw, after commit-visible or page-finished;</li>
+ *   <li>the page calls {@code stash_sdk.ready()};</li>
+ *   <li>{@link #SAFETY_TIMEOUT_MS} passes after the navigation started.</li>
+ * </ul>
+ * All methods must be called on the main thread.
+ */
+public class StashRevealGate {
+    private static final String TAG = "StashPayCard";
+    static final long SAFETY_TIMEOUT_MS = 4000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable onReveal;
+    private final Runnable safetyTimeout = () -> open("timeout");
+    private int generation;
+    private boolean revealed;
+
+    StashRevealGate(Runnable onReveal) {
+        this.onReveal = onReveal;
+    }
+
+    /**
+     * Starts a new navigation: the content is hidden until one of the reveal signals arrives.
+     */
+    void arm() {
+        generation++;
+        revealed = false;
+        handler.removeCallbacks(safetyTimeout);
+        handler.postDelayed(safetyTimeout, SAFETY_TIMEOUT_MS);
+    }
+
+    /**
+     * Called when the WebView has new content to draw. Reveals once that content reaches the screen,
+     * or right away where visual state callbacks are not available.
+     */
+    void onContentVisible(WebView view, final String signal) {
+        if (revealed) return;
+        final int armedGeneration = generation;
+        boolean posted = StashWebViewUtils.postVisualStateCallback(view, () -> {
+            if (armedGeneration == generation) {
+                open(signal);
+            }
+        });
+        if (!posted) {
+            open(signal);
+        }
+    }
+
+    /**
+     * Called when the page reports that it is interactive through {@code stash_sdk.ready()}.
+     */
+    void onPageReady() {
+        open("ready");
+    }
+
+    /**
+     * Reveals immediately, e.g. for a preloaded page that has already been drawn.
+     */
+    void revealNow() {
+        open("immediate");
+    }
+
+    void cancel() {
+        generation++;
+        revealed = true;
+        handler.removeCallbacks(safetyTimeout);
+    }
+
+    boolean isRevealed() {
+        return revealed;
+    }
+
+    private void open(String signal) {
+        if (revealed) return;
+        revealed = true;
+        handler.removeCallbacks(safetyTimeout);
+        Log.d(TAG, "Revealing checkout on " + signal);
+        try {
+            onReveal.run();
+        } catch (Exception e) {
+            Log.e(TAG, "Error revealing checkout: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.stash.popup;
+
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.util.Log;
+import android.webkit.WebView;
+
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * WebView used by every Stash Pay checkout surface.
+ *
+ * The WebView is built on a {@link MutableContextWrapper} so that instances created
+ * ahead of time against the application context can be rebased onto the Activity
+ * that presents them, and back again when they are returned to the pool.
+ */
+public class StashWebView extends WebView {
+    private static final String TAG = "StashPayCard";
+
+    final StashJavaScriptBridge bridge = new StashJavaScriptBridge();
+    CheckoutMetrics.WebViewSource source = CheckoutMetrics.WebViewSource.COLD;
+    private final MutableContextWrapper contextWrapper;
+    private final Set<String> sdkScriptOrigins = new HashSet<>();
+    private final Set<String> messageListenerOrigins = new HashSet<>();
+
+    StashWebView(Context context) {
+        this(new MutableContextWrapper(context));
+    }
+
+    private StashWebView(MutableContextWrapper contextWrapper) {
+        super(contextWrapper);
+        this.contextWrapper = contextWrapper;
+    }
+
+    void setBaseContext(Context context) {
+        if (context != null) {
+            contextWrapper.setBaseContext(context);
+        }
+    }
+
+    /**
+     * Prepares the bridge for a checkout loaded from {@code url}. Must be called before the
+     * URL is loaded.
+     *
+     * Scopes the {@code StashNative} message listener to the checkout's origin and installs
+     * {@link StashWebViewUtils#JS_SDK_SCRIPT} as a document-start script for it, so
+     * {@code window.stash_sdk} exists before any page script runs. Each step is skipped
+     * when the WebView does not support it.
+     */
+    void installCheckoutBridge(String url) {
+        String origin = StashWebViewUtils.getOrigin(url);
+        if (origin == null) return;
+
+        if (!messageListenerOrigins.contains(origin)
+                && WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_LISTENER)) {
+            try {
+                Set<String> origins = new HashSet<>(messageListenerOrigins);
+                origins.add(origin);
+                if (!messageListenerOrigins.isEmpty()) {
+                    WebViewCompat.removeWebMessageListener(this, StashJavaScriptBridge.MESSAGE_LISTENER_NAME);
+                }
+                WebViewCompat.addWebMessageListener(this, StashJavaScriptBridge.MESSAGE_LISTENER_NAME, origins, bridge);
+                messageListenerOrigins.add(origin);
+            } catch (Exception e) {
+                Log.e(TAG, "Error installing message listener: " + e.getMessage(), e);
+            }
+        }
+
+        if (!sdkScriptOrigins.contains(origin)
+                && WebViewFeature.isFeatureSupported(WebViewFeature.DOCUMENT_START_SCRIPT)) {
+            try {
+                WebViewCompat.addDocumentStartJavaScript(this, StashWebViewUtils.JS_SDK_SCRIPT,
+                    Collections.singleton(origin));
+                sdkScriptOrigins.add(origin);
+            } catch (Exception e) {
+                Log.e(TAG, "Error installing document-start SDK script: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Evaluates the SDK script on the current page unless it is already installed as a
+     * document-start script for the page's origin. Called from page events, as a fallback for
+     * older WebViews and for pages the checkout redirected to on another origin.
+     */
+    void injectSdkIfNeeded() {
+        String origin = StashWebViewUtils.getOrigin(getUrl());
+        if (origin != null && sdkScriptOrigins.contains(origin)) return;
+        evaluateJavascript(StashWebViewUtils.JS_SDK_SCRIPT, null);
+    }
+}
@@ -0,0 +1,337 @@
+package com.stash.popup;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.webkit.WebChromeClient;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pool of fully configured checkout WebViews.
+ *
+ * WebViews are built one per idle slot of the main looper so that construction never
+ * competes with a frame, and are handed to the card or popup on open. Returned WebViews
+ * are reset to a blank page and kept for the next checkout, up to the configured size.
+ * Pooling is only active once {@link #prewarm(Context, int)} has been called; until then
+ * {@link #release(StashWebView)} simply destroys the WebView.
+ *
+ * Released WebViews are only detached and stopped synchronously. Callers release them once the
+ * dismiss animation has ended; resetting or destroying them is further deferred until the host
+ * Activity is resumed, as reported by {@link StashActivityTracker}, and then runs one WebView per
+ * idle slot of the main looper, so {@code destroy()} does not cause a hitch while the host
+ * resumes rendering. A recycled WebView
+ * only joins the pool once {@code about:blank} has finished loading and its history has been
+ * cleared, so the next checkout never inherits the previous one's back stack.
+ *
+ * All methods except {@link #prewarm(Context, int)} must be called on the main thread.
+ */
+public class StashWebViewPool {
+    private static final String TAG = "StashPayCard";
+    private static final int DEFAULT_MAX_SIZE = 2;
+    private static final long RESET_TIMEOUT_MS = 3000;
+    private static StashWebViewPool instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ArrayDeque<StashWebView> idleWebViews = new ArrayDeque<>();
+    private final ArrayDeque<StashWebView> pendingTeardown = new ArrayDeque<>();
+    /** Recycled WebViews loading about:blank before they join the pool. */
+    private final ArrayDeque<StashWebView> resettingWebViews = new ArrayDeque<>();
+
+    private Context appContext;
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private int targetSize;
+    private boolean warmupScheduled;
+    private boolean teardownScheduled;
+
+    private final MessageQueue.IdleHandler warmupIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            if (appContext == null || retainedCount() >= effectiveTargetSize()
+                    || !StashMemoryManager.getInstance().canRetainIdleWebView()) {
+                warmupScheduled = false;
+                return false;
+            }
+            try {
+                StashWebView webView = createWebView(appContext);
+                StashWebViewUtils.setRendererPriorityWaived(webView, true);
+                idleWebViews.offer(webView);
+            } catch (Exception e) {
+                Log.e(TAG, "Error prewarming WebView: " + e.getMessage(), e);
+                warmupScheduled = false;
+                return false;
+            }
+            boolean needsMore = retainedCount() < effectiveTargetSize();
+            warmupScheduled = needsMore;
+            return needsMore;
+        }
+    };
+
+    private final MessageQueue.IdleHandler teardownIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            recycleOrDestroy(pendingTeardown.poll());
+            boolean needsMore = !pendingTeardown.isEmpty();
+            teardownScheduled = needsMore;
+            return needsMore;
+        }
+    };
+
+    public static synchronized StashWebViewPool getInstance() {
+        if (instance == null) {
+            instance = new StashWebViewPool();
+        }
+        return instance;
+    }
+
+    private StashWebViewPool() {
+    }
+
+    /**
+     * Sets the maximum number of idle WebViews kept by the pool.
+     * Idle WebViews above the new size are destroyed.
+     */
+    void setMaxSize(int size) {
+        mainHandler.post(() -> {
+            maxSize = Math.max(0, size);
+            while (idleWebViews.size() > maxSize) {
+                destroyQuietly(idleWebViews.poll());
+            }
+        });
+    }
+
+    /**
+     * Requests that {@code count} WebViews be built ahead of time, capped by the pool size.
+     * May be called from any thread.
+     */
+    void prewarm(Context context, int count) {
+        if (context == null) {
+            Log.e(TAG, "Cannot prewarm WebViews without a context");
+            return;
+        }
+        final Context applicationContext = context.getApplicationContext();
+        mainHandler.post(() -> {
+            appContext = applicationContext;
+            targetSize = Math.max(0, count);
+            scheduleWarmup();
+        });
+    }
+
+    /**
+     * Returns a configured WebView bound to {@code activity}, taking one from the pool
+     * when available and building a new one otherwise.
+     */
+    StashWebView acquire(Activity activity) {
+        StashWebView webView = idleWebViews.poll();
+        if (webView == null) {
+            webView = createWebView(activity);
+            webView.source = CheckoutMetrics.WebViewSource.COLD;
+        } else {
+            webView.onResume();
+            webView.source = CheckoutMetrics.WebViewSource.POOLED;
+            StashWebViewUtils.setRendererPriorityWaived(webView, false);
+            scheduleWarmup();
+        }
+        webView.setBaseContext(activity);
+        StashWebViewUtils.applyForceDark(webView, StashWebViewUtils.isDarkTheme(activity));
+        return webView;
+    }
+
+    /**
+     * Detaches a WebView from its owner and stops it. Resetting it for reuse or destroying it
+     * happens later, on an idle slot of the main looper.
+     */
+    void release(StashWebView webView) {
+        if (webView == null) return;
+
+        try {
+            if (webView.getParent() != null) {
+                ((ViewGroup) webView.getParent()).removeView(webView);
+            }
+            webView.bridge.setListener(null);
+            webView.setWebViewClient(new WebViewClient());
+            webView.setWebChromeClient(new WebChromeClient());
+            webView.setVerticalScrollBarEnabled(true);
+            webView.setHorizontalScrollBarEnabled(true);
+            webView.setVisibility(View.VISIBLE);
+            webView.setTranslationX(0);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                webView.getSettings().setOffscreenPreRaster(false);
+            }
+            webView.stopLoading();
+            webView.onPause();
+            // Drop the Activity right away; the WebView may wait a while for its teardown
+            webView.setBaseContext(webView.getContext().getApplicationContext());
+        } catch (Exception e) {
+            Log.e(TAG, "Error detaching WebView: " + e.getMessage(), e);
+            destroyQuietly(webView);
+            return;
+        }
+
+        pendingTeardown.offer(webView);
+        scheduleTeardown();
+    }
+
+    private void recycleOrDestroy(StashWebView webView) {
+        if (webView == null) return;
+
+        if (appContext == null || retainedCount() >= effectiveTargetSize()
+                || !StashMemoryManager.getInstance().canRetainIdleWebView()) {
+            destroyQuietly(webView);
+            return;
+        }
+
+        try {
+            ResetClient client = new ResetClient(webView);
+            webView.setBaseContext(appContext);
+            webView.setWebViewClient(client);
+            resettingWebViews.offer(webView);
+            // History can only be cleared once about:blank is the current entry; see ResetClient
+            webView.loadUrl("about:blank");
+            mainHandler.postDelayed(client, RESET_TIMEOUT_MS);
+        } catch (Exception e) {
+            Log.e(TAG, "Error resetting WebView for reuse: " + e.getMessage(), e);
+            resettingWebViews.remove(webView);
+            destroyQuietly(webView);
+        }
+    }
+
+    /**
+     * Called once about:blank has finished loading in a recycled WebView: clears the previous
+     * checkout's history and adds the WebView to the pool, or destroys it if the pool filled up
+     * or memory got tight in the meantime.
+     */
+    private void finishReset(StashWebView webView, ResetClient client) {
+        if (!resettingWebViews.remove(webView)) return;
+        mainHandler.removeCallbacks(client);
+        try {
+            webView.clearHistory();
+            webView.setWebViewClient(new WebViewClient());
+            webView.onPause();
+            if (appContext == null || idleWebViews.size() >= effectiveTargetSize()
+                    || !StashMemoryManager.getInstance().canRetainIdleWebView()) {
+                destroyQuietly(webView);
+                return;
+            }
+            StashWebViewUtils.setRendererPriorityWaived(webView, true);
+            idleWebViews.offer(webView);
+        } catch (Exception e) {
+            Log.e(TAG, "Error resetting WebView for reuse: " + e.getMessage(), e);
+            destroyQuietly(webView);
+        }
+    }
+
+    int idleCount() {
+        return idleWebViews.size();
+    }
+
+    /**
+     * Destroys idle WebViews, and released WebViews still waiting for their teardown, until at
+     * most {@code count} idle WebViews remain. Warmup resumes with the next {@link #acquire(Activity)}
+     * once memory allows it.
+     */
+    void trimIdle(int count) {
+        while (!pendingTeardown.isEmpty()) {
+            destroyQuietly(pendingTeardown.poll());
+        }
+        while (!resettingWebViews.isEmpty()) {
+            destroyQuietly(resettingWebViews.poll());
+        }
+        while (idleWebViews.size() > Math.max(0, count)) {
+            destroyQuietly(idleWebViews.poll());
+        }
+    }
+
+    /** Idle WebViews plus recycled ones about to become idle. */
+    private int retainedCount() {
+        return idleWebViews.size() + resettingWebViews.size();
+    }
+
+    private int effectiveTargetSize() {
+        return Math.min(targetSize, maxSize);
+    }
+
+    /**
+     * Called when a host Activity resumes; starts the teardown that was waiting for it.
+     */
+    void onHostResumed() {
+        scheduleTeardown();
+    }
+
+    private void scheduleTeardown() {
+        if (teardownScheduled || pendingTeardown.isEmpty()) return;
+        // Behind the card Activity or in the background: wait for the host to come back
+        if (StashActivityTracker.getInstance().isHostPaused()) return;
+        teardownScheduled = true;
+        Looper.myQueue().addIdleHandler(teardownIdleHandler);
+    }
+
+    private void scheduleWarmup() {
+        if (warmupScheduled || appContext == null || retainedCount() >= effectiveTargetSize()) {
+            return;
+        }
+        warmupScheduled = true;
+        mainHandler.post(() -> Looper.myQueue().addIdleHandler(warmupIdleHandler));
+    }
+
+    private static StashWebView createWebView(Context context) {
+        StashWebView webView = new StashWebView(context);
+        try {
+            StashWebViewUtils.configureWebViewSettings(webView, StashWebViewUtils.isDarkTheme(context));
+        } catch (Exception e) {
+            Log.e(TAG, "Error configuring WebView settings: " + e.getMessage(), e);
+        }
+        webView.setWebViewClient(new WebViewClient());
+        webView.setWebChromeClient(new WebChromeClient());
+        webView.addJavascriptInterface(webView.bridge, StashJavaScriptBridge.INTERFACE_NAME);
+        return webView;
+    }
+
+    private static void destroyQuietly(StashWebView webView) {
+        if (webView == null) return;
+        try {
+            if (webView.getParent() != null) {
+                ((ViewGroup) webView.getParent()).removeView(webView);
+            }
+            webView.stopLoading();
+            webView.destroy();
+        } catch (Exception e) {
+            Log.e(TAG, "Error destroying WebView: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Finishes the reset of a recycled WebView when about:blank has loaded, or destroys the
+     * WebView if it has not within {@link #RESET_TIMEOUT_MS}.
+     */
+    private class ResetClient extends WebViewClient implements Runnable {
+        private final StashWebView webView;
+
+        ResetClient(StashWebView webView) {
+            this.webView = webView;
+        }
+
+        @Override
+        public void onPageFinished(WebView view, String url) {
+            if ("about:blank".equals(url)) {
+                finishReset(webView, this);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (resettingWebViews.remove(webView)) {
+                Log.w(TAG, "Timed out resetting WebView for reuse");
+                destroyQuietly(webView);
+            }
+        }
+    }
+}
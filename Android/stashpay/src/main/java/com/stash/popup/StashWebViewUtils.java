@@ -26,35 +26,36 @@ public class StashWebViewUtils {
     public static final String COLOR_BACKGROUND_DIM = "#20000000";
     public static final String COLOR_DARK_BG = "#1C1C1E";
     
+    /**
+     * Installs {@code window.stash_sdk}. Events are sent as JSON through the {@code StashNative}
+     * message listener when the WebView provides it, and through the legacy
+     * {@code StashAndroid.postMessage} interface otherwise.
+     */
     public static final String JS_SDK_SCRIPT = "(function() {" +
         "  window.stash_sdk = window.stash_sdk || {};" +
-        "  window.stash_sdk.onPaymentSuccess = function(data) {" +
-        "    try { StashAndroid.onPaymentSuccess(); } catch(e) {}" +
-        "  };" +
-        "  window.stash_sdk.onPaymentFailure = function(data) {" +
-        "    try { StashAndroid.onPaymentFailure(); } catch(e) {}" +
-        "  };" +
-        "  window.stash_sdk.onPurchaseProcessing = function(data) {" +
-        "    try { StashAndroid.onPurchaseProcessing(); } catch(e) {}" +
-        "  };" +
-        "  window.stash_sdk.setPaymentChannel = function(optinType) {" +
-        "    try { StashAndroid.setPaymentChannel(optinType || ''); } catch(e) {}" +
-        "  };" +
-        "  window.stash_sdk.expand = function() {" +
-        "    try { StashAndroid.expand(); } catch(e) {}" +
-        "  };" +
-        "  window.stash_sdk.collapse = function() {" +
-        "    try { StashAndroid.collapse(); } catch(e) {}" +
-        "  };" +
+        "  function send(type, data) {" +
+        "    var message = JSON.stringify({ type: type, data: data === undefined ? null : data, t: Date.now() });" +
+        "    try {" +
+        "      if (window.StashNative && window.StashNative.postMessage) {" +
+        "        window.StashNative.postMessage(message);" +
+        "        return;" +
+        "      }" +
+        "    } catch(e) {}" +
+        "    try { StashAndroid.postMessage(message); } catch(e) {}" +
+        "  }" +
+        "  window.stash_sdk.onPaymentSuccess = function(data) { send('onPaymentSuccess', data); };" +
+        "  window.stash_sdk.onPaymentFailure = function(data) { send('onPaymentFailure', data); };" +
+        "  window.stash_sdk.onPurchaseProcessing = function(data) { send('onPurchaseProcessing', data); };" +
+        "  window.stash_sdk.setPaymentChannel = function(optinType) { send('setPaymentChannel', optinType || ''); };" +
+        "  window.stash_sdk.expand = function() { send('expand'); };" +
+        "  window.stash_sdk.collapse = function() { send('collapse'); };" +
+        "  window.stash_sdk.ready = function() { send('ready'); };" +
+        "  if (location.protocol.indexOf('http') === 0) { send('bridgeReady'); }" +
         "})();";
 
     public static boolean isDarkTheme(Context context) {
         if (context == null) return false;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            int nightModeFlags = context.getResources().getConfiguration().uiMode & Configuration.UI_MODE_NIGHT_MASK;
-            return nightModeFlags == Configuration.UI_MODE_NIGHT_YES;
-        }
-        return false;
+        return DeviceProfile.get(context).isDarkTheme;
     }
 
     public static int dpToPx(Context context, int dp) {
@@ -64,24 +65,7 @@ public class StashWebViewUtils {
 
     public static boolean isTablet(Activity activity) {
         if (activity == null) return false;
-        DisplayMetrics metrics = activity.getResources().getDisplayMetrics();
-        int smallerDimension = Math.min(metrics.widthPixels, metrics.heightPixels);
-        float smallerDp = smallerDimension / metrics.density;
-        
-        boolean isTabletBySize = smallerDp >= 600;
-        
-        boolean isTabletByConfig = false;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR2) {
-            int screenSize = activity.getResources().getConfiguration().screenLayout & Configuration.SCREENLAYOUT_SIZE_MASK;
-            isTabletByConfig = (screenSize == Configuration.SCREENLAYOUT_SIZE_LARGE || 
-                               screenSize == Configuration.SCREENLAYOUT_SIZE_XLARGE);
-        }
-        
-        float aspectRatio = (float)Math.max(metrics.widthPixels, metrics.heightPixels) / 
-                           Math.min(metrics.widthPixels, metrics.heightPixels);
-        boolean isTabletByAspect = aspectRatio < 2.0f && smallerDp >= 500;
-        
-        return isTabletBySize || isTabletByConfig || isTabletByAspect;
+        return DeviceProfile.get(activity).isTablet;
     }
 
     public static void configureWebViewSettings(WebView webView, boolean isDarkTheme) {
@@ -103,8 +87,30 @@ public class StashWebViewUtils {
         }
         CookieManager.getInstance().setAcceptCookie(true);
         
+        applyForceDark(webView, isDarkTheme);
+    }
+
+    /**
+     * Lets the system kill the renderer before the app while {@code webView} is idle, and
+     * restores the default priority when it is shown again. API 26+.
+     */
+    public static void setRendererPriorityWaived(WebView webView, boolean waived) {
+        if (webView == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return;
+        try {
+            if (waived) {
+                webView.setRendererPriorityPolicy(WebView.RENDERER_PRIORITY_WAIVED, true);
+            } else {
+                webView.setRendererPriorityPolicy(WebView.RENDERER_PRIORITY_IMPORTANT, false);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error setting renderer priority: " + e.getMessage(), e);
+        }
+    }
+
+    public static void applyForceDark(WebView webView, boolean isDarkTheme) {
+        if (webView == null) return;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            settings.setForceDark(isDarkTheme ? WebSettings.FORCE_DARK_ON : WebSettings.FORCE_DARK_OFF);
+            webView.getSettings().setForceDark(isDarkTheme ? WebSettings.FORCE_DARK_ON : WebSettings.FORCE_DARK_OFF);
         }
     }
 
@@ -129,6 +135,40 @@ public class StashWebViewUtils {
         }
     }
 
+    /**
+     * Returns the origin ({@code scheme://host[:port]}) of an http(s) URL, or null.
+     */
+    public static String getOrigin(String url) {
+        if (url == null || url.isEmpty()) return null;
+        try {
+            Uri uri = Uri.parse(url);
+            String scheme = uri.getScheme();
+            String host = uri.getHost();
+            if (host == null || !("https".equals(scheme) || "http".equals(scheme))) {
+                return null;
+            }
+            return uri.getPort() != -1 ? scheme + "://" + host + ":" + uri.getPort() : scheme + "://" + host;
+        } catch (Exception e) {
+            Log.e(TAG, "Error parsing origin: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Runs {@code callback} once the WebView's current content is ready to be drawn.
+     * Returns false without running it on API levels before 23.
+     */
+    public static boolean postVisualStateCallback(WebView webView, final Runnable callback) {
+        if (webView == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return false;
+        webView.postVisualStateCallback(0, new WebView.VisualStateCallback() {
+            @Override
+            public void onComplete(long requestId) {
+                callback.run();
+            }
+        });
+        return true;
+    }
+
     public static int getThemeBackgroundColor(Context context) {
         if (context == null) return Color.WHITE;
         return isDarkTheme(context) ? Color.parseColor(COLOR_DARK_BG) : Color.WHITE;
@@ -0,0 +1,180 @@
+package com.stash.popup;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebSettings;
+
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+
+/**
+ * Initializes the WebView engine ahead of the first checkout.
+ *
+ * The first WebView in a process loads the Chromium provider, opens the cookie store and starts
+ * Safe Browsing, which together can cost hundreds of milliseconds on the UI thread. None of these
+ * can move to a background thread:
+ * <ul>
+ *   <li>{@code WebSettings.getDefaultUserAgent} starts the provider, which binds Chromium to the
+ *   UI thread; called elsewhere, it blocks on a task posted to the UI thread on many WebView
+ *   versions, so it would still cost the UI thread and add a cross-thread wait;</li>
+ *   <li>{@code CookieManager.getInstance()} also starts the provider if it is not loaded yet, and
+ *   older WebView versions require it on the UI thread;</li>
+ *   <li>{@code WebViewCompat.startSafeBrowsing} must be called on the UI thread.</li>
+ * </ul>
+ * So each of them runs in its own idle slot of the main looper, where none of them competes with a
+ * frame. The time each step took is reported as {@link StashPayCard.InitTimings} once all of them
+ * are done.
+ *
+ * The SDK's own disk work does not touch WebView and runs on a background thread instead: reading
+ * the bundled checkout shell's version and opening the asset cache's index, which would otherwise
+ * happen on the first checkout.
+ */
+public class StashWebViewWarmup {
+    private static final String TAG = "StashPayCard";
+    private static final int STEP_PROVIDER = 0;
+    private static final int STEP_COOKIE_MANAGER = 1;
+    private static final int STEP_SAFE_BROWSING = 2;
+    private static final int STEP_DONE = 3;
+    private static StashWebViewWarmup instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private Context appContext;
+    private StashPayCard.InitOptions options;
+    private boolean started;
+    private int step;
+    private long startedAt;
+    private long providerMs = StashPayCard.InitTimings.NOT_RUN;
+    private long cookieManagerMs = StashPayCard.InitTimings.NOT_RUN;
+    private long safeBrowsingMs = StashPayCard.InitTimings.NOT_RUN;
+
+    private final MessageQueue.IdleHandler stepIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            return runStep();
+        }
+    };
+
+    public static synchronized StashWebViewWarmup getInstance() {
+        if (instance == null) {
+            instance = new StashWebViewWarmup();
+        }
+        return instance;
+    }
+
+    private StashWebViewWarmup() {
+    }
+
+    /**
+     * Schedules the warmup. Only the first call has an effect. May be called from any thread.
+     */
+    void start(Context context, StashPayCard.InitOptions initOptions) {
+        if (context == null) {
+            Log.e(TAG, "Cannot initialize WebView without a context");
+            return;
+        }
+        final Context applicationContext = context.getApplicationContext();
+        final StashPayCard.InitOptions opts = initOptions != null ? initOptions : new StashPayCard.InitOptions();
+        mainHandler.post(() -> {
+            if (started) {
+                Log.d(TAG, "StashPayCard already initialized");
+                return;
+            }
+            started = true;
+            appContext = applicationContext;
+            options = opts;
+            step = STEP_PROVIDER;
+            startedAt = CheckoutMetrics.now();
+            StashMemoryManager.getInstance().register(applicationContext);
+            startStorageWarmup(applicationContext);
+            if (opts.prewarmCount > 0) {
+                StashWebViewPool.getInstance().prewarm(applicationContext, opts.prewarmCount);
+            }
+            Looper.myQueue().addIdleHandler(stepIdleHandler);
+        });
+    }
+
+    /**
+     * Reads the SDK's files off the main thread so the first checkout finds them ready.
+     */
+    private static void startStorageWarmup(final Context applicationContext) {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+                long start = CheckoutMetrics.now();
+                StashCheckoutShell.getInstance().warmUp(applicationContext);
+                StashAssetCache.getInstance().warmUp(applicationContext);
+                Log.d(TAG, "SDK storage initialized in " + (CheckoutMetrics.now() - start) + "ms");
+            } catch (Exception e) {
+                Log.e(TAG, "Error initializing SDK storage: " + e.getMessage(), e);
+            }
+        }, "StashPayCard-warmup");
+        thread.start();
+    }
+
+    /**
+     * Runs the next enabled step. Returns true while more steps remain for later idle slots.
+     */
+    private boolean runStep() {
+        try {
+            switch (step++) {
+                case STEP_PROVIDER:
+                    if (options.warmWebViewProvider) {
+                        long start = CheckoutMetrics.now();
+                        // Loads the provider and its native library without creating a WebView
+                        WebSettings.getDefaultUserAgent(appContext);
+                        providerMs = CheckoutMetrics.now() - start;
+                    }
+                    return true;
+                case STEP_COOKIE_MANAGER:
+                    if (options.warmCookieManager) {
+                        long start = CheckoutMetrics.now();
+                        CookieManager.getInstance().setAcceptCookie(true);
+                        cookieManagerMs = CheckoutMetrics.now() - start;
+                    }
+                    return true;
+                case STEP_SAFE_BROWSING:
+                    if (options.warmSafeBrowsing
+                            && WebViewFeature.isFeatureSupported(WebViewFeature.START_SAFE_BROWSING)) {
+                        final long start = CheckoutMetrics.now();
+                        WebViewCompat.startSafeBrowsing(appContext, success -> {
+                            safeBrowsingMs = CheckoutMetrics.now() - start;
+                            if (!Boolean.TRUE.equals(success)) {
+                                Log.d(TAG, "Safe Browsing is not available");
+                            }
+                            finish();
+                        });
+                    } else {
+                        finish();
+                    }
+                    return false;
+                default:
+                    return false;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error initializing WebView: " + e.getMessage(), e);
+            step = STEP_DONE;
+            finish();
+            return false;
+        }
+    }
+
+    private void finish() {
+        StashPayCard.InitTimings timings = new StashPayCard.InitTimings(
+            providerMs, cookieManagerMs, safeBrowsingMs, CheckoutMetrics.now() - startedAt);
+        Log.d(TAG, "WebView initialized: " + timings);
+
+        StashPayCard.InitListener listener = options.listener;
+        if (listener == null) return;
+        try {
+            listener.onInitialized(timings);
+        } catch (Exception e) {
+            Log.e(TAG, "Error in init listener: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.stash.popup;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Checks the lookup-table SpringInterpolator against the closed-form damped oscillator it samples.
+ * Its per-call cost is measured on a device, in {@code SpringInterpolatorBenchmark}.
+ */
+public class SpringInterpolatorTest {
+    /**
+     * Two pixels on a 1000px card. Linear interpolation over 512 samples stays inside this, including
+     * the cells where an overshooting curve is clamped to 1.
+     */
+    private static final double TOLERANCE = 2e-3;
+    private static final int SAMPLES = 10007;
+    /** The table pins its last sample to exactly 1, so the final cell is checked by the endpoint test. */
+    private static final float LAST_CELL = 1f - 1f / 512;
+
+    @Test
+    public void defaultSpringMatchesAnalyticCurve() {
+        assertMatchesBaseline(new SpringInterpolator(), 0.85, 400, 1);
+    }
+
+    @Test
+    public void underdampedSpringMatchesAnalyticCurve() {
+        assertMatchesBaseline(new SpringInterpolator(0.7f, 300f, 1f), 0.7, 300, 1);
+    }
+
+    @Test
+    public void criticallyDampedSpringMatchesAnalyticCurve() {
+        assertMatchesBaseline(new SpringInterpolator(1f, 400f, 1f), 1, 400, 1);
+    }
+
+    @Test
+    public void overdampedSpringMatchesAnalyticCurve() {
+        assertMatchesBaseline(new SpringInterpolator(1.6f, 400f, 2f), 1.6, 400, 2);
+    }
+
+    @Test
+    public void endpointsAreExact() {
+        SpringInterpolator interpolator = new SpringInterpolator();
+        assertEquals(0f, interpolator.getInterpolation(-0.5f), 0f);
+        assertEquals(0f, interpolator.getInterpolation(0f), 0f);
+        assertEquals(1f, interpolator.getInterpolation(1f), 0f);
+        assertEquals(1f, interpolator.getInterpolation(1.5f), 0f);
+    }
+
+    private static void assertMatchesBaseline(SpringInterpolator interpolator,
+                                              double damping, double stiffness, double mass) {
+        for (int i = 0; i <= SAMPLES; i++) {
+            float t = LAST_CELL * i / SAMPLES;
+            double expected = Math.max(0, Math.min(1, baseline(t, damping, stiffness, mass)));
+            assertEquals("at t=" + t, expected, interpolator.getInterpolation(t), TOLERANCE);
+        }
+    }
+
+    /**
+     * Position of a unit step response of a damped harmonic oscillator, evaluated directly.
+     */
+    private static double baseline(double t, double damping, double stiffness, double mass) {
+        if (t <= 0) return 0;
+        if (t >= 1) return 1;
+        double omega = Math.sqrt(stiffness / mass);
+        if (damping < 1) {
+            double dampedOmega = omega * Math.sqrt(1 - damping * damping);
+            return 1 - Math.exp(-damping * omega * t)
+                * (Math.cos(dampedOmega * t) + damping * omega / dampedOmega * Math.sin(dampedOmega * t));
+        }
+        if (damping == 1) {
+            return 1 - Math.exp(-omega * t) * (1 + omega * t);
+        }
+        double root = omega * Math.sqrt(damping * damping - 1);
+        double r1 = -damping * omega + root;
+        double r2 = -damping * omega - root;
+        return 1 - (r2 * Math.exp(r1 * t) - r1 * Math.exp(r2 * t)) / (r2 - r1);
+    }
+}
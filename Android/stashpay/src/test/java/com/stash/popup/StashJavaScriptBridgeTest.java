@@ -0,0 +1,75 @@
+package com.stash.popup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Checks that bridge messages reach the listener with their payload. The round-trip benchmark over
+ * both transports runs on a device, in {@code StashJavaScriptBridgeBenchmark}.
+ */
+public class StashJavaScriptBridgeTest {
+    private static final String SUCCESS_MESSAGE =
+        "{\"type\":\"onPaymentSuccess\",\"data\":{\"orderId\":\"ord_123\",\"amount\":\"4.99\",\"currency\":\"USD\"}}";
+
+    @Test
+    public void paymentSuccessCarriesPayload() {
+        RecordingListener listener = new RecordingListener();
+        StashJavaScriptBridge bridge = new StashJavaScriptBridge();
+        bridge.setListener(listener);
+
+        bridge.dispatch(SUCCESS_MESSAGE, StashJavaScriptBridge.TRANSPORT_MESSAGE_LISTENER);
+
+        assertEquals(1, listener.events);
+        assertEquals(StashPayCard.PaymentEvent.Type.PAYMENT_SUCCESS, listener.lastEvent.type);
+        assertEquals("ord_123", listener.lastEvent.orderId);
+        assertEquals("4.99", listener.lastEvent.amount);
+        assertEquals("USD", listener.lastEvent.currency);
+    }
+
+    @Test
+    public void messageWithoutDataHasNoPayload() {
+        RecordingListener listener = new RecordingListener();
+        StashJavaScriptBridge bridge = new StashJavaScriptBridge();
+        bridge.setListener(listener);
+
+        bridge.dispatch("{\"type\":\"onPaymentFailure\"}", StashJavaScriptBridge.TRANSPORT_JAVASCRIPT_INTERFACE);
+
+        assertEquals(1, listener.events);
+        assertEquals(StashPayCard.PaymentEvent.Type.PAYMENT_FAILURE, listener.lastEvent.type);
+        assertNull(listener.lastEvent.data);
+        assertNull(listener.lastEvent.orderId);
+    }
+
+    @Test
+    public void malformedMessageIsDropped() {
+        RecordingListener listener = new RecordingListener();
+        StashJavaScriptBridge bridge = new StashJavaScriptBridge();
+        bridge.setListener(listener);
+
+        bridge.dispatch("not json", StashJavaScriptBridge.TRANSPORT_MESSAGE_LISTENER);
+        bridge.dispatch(null, StashJavaScriptBridge.TRANSPORT_MESSAGE_LISTENER);
+
+        assertEquals(0, listener.events);
+    }
+
+    private static class RecordingListener implements StashJavaScriptBridge.Listener {
+        int events;
+        StashPayCard.PaymentEvent lastEvent;
+
+        private void record(StashPayCard.PaymentEvent event) {
+            events++;
+            lastEvent = event;
+        }
+
+        @Override public void onPaymentSuccess(StashPayCard.PaymentEvent event) { record(event); }
+        @Override public void onPaymentFailure(StashPayCard.PaymentEvent event) { record(event); }
+        @Override public void onPurchaseProcessing(StashPayCard.PaymentEvent event) { record(event); }
+        @Override public void setPaymentChannel(String optinType) { events++; }
+        @Override public void expand() { events++; }
+        @Override public void collapse() { events++; }
+        @Override public void onBridgeReady() { events++; }
+        @Override public void onPageReady() { events++; }
+    }
+}